@@ -5,20 +5,42 @@ package com.cover.common;
 
 import javax.net.ssl.*;
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 // 网络请求 工具类
 @SuppressWarnings({"SameParameterValue", "unchecked", "RegExpRedundantEscape", "UnusedReturnValue", "unused"})
 // @Slf4j
-public class HTTP {
+public class HTTP implements Closeable {
 
     // 常规网络请求方法 ##################################################################################################################
     public static final String METHOD_GET_VALUE = "GET"; // 获取资源
@@ -61,21 +83,62 @@ public class HTTP {
     private String encoding = "UTF-8"; // 处理字符集
     private String contentType = CONTENT_TYPE_FORM_VALUE; // 提交请求类型
 
-    private String referer = ""; // Header 来源标识, 若空则使用请求地址作为来源标识
+    private volatile String referer = ""; // Header 来源标识, 若空则使用请求地址作为来源标识, 请求过程中只读
+    private final ThreadLocal<String> previousUrl = new ThreadLocal<>(); // 当前线程上一个请求地址, 普通请求方法自动作为下一个请求的来源, 各线程互不影响
     private String userAgent = USER_AGENT_MAC_CHROME; // Header 客户端标识
-    private boolean gzip = false; // 是否接受 gzip 格式
+    private boolean gzip = false; // 是否接受压缩格式, 开启后按已注册的解码器发送 Accept-Encoding
+    private volatile Map<String, ContentDecoder> decoders = $defaultDecoders(); // 响应解码器, 按 Content-Encoding 边读边解压, 只读快照
+    private int compressThreshold = -1; // POST / PUT 提交内容超过此长度(字符数)时 gzip 压缩提交, < 0 不压缩, 服务端需支持 Content-Encoding: gzip
     private boolean followRedirects = false; // 是否允许当前请求自动跳转
 
-    private final Map<String, Object> headers = new LinkedHashMap<>(); // 请求头信息
+    private volatile Map<String, Object> headers = Collections.emptyMap(); // 请求头信息, 只读快照, 修改时整体替换, 请求过程中不加锁读取
     private boolean useCookie = true; // 是否使用 Cookie
-    private CookieManager cookieManager; // Cookie 管理器
+    private volatile CookieManager cookieManager; // Cookie 管理器
 
-    private int downloadMinSize = 100; // 下载文件下限, 小于此大小不下载
-    private int downloadMaxSize = 50 * 1024 * 1024; // 下载文件上限, 大于此大小不下载
+    private long downloadMinSize = 100; // 下载文件下限, 小于此大小不下载, 长度未知时下载完成后校验
+    private long downloadMaxSize = 50 * 1024 * 1024; // 下载文件上限, 大于此大小不下载, 长度未知时边下载边校验
+    private int bufferSize = 8 * 1024; // 传输缓冲区大小, 下载, 上传, 读取响应共用, 高带宽下可调大, 例如 256Kb
+    private boolean downloadResume = false; // 断点续传, 下载失败时保留 .part 临时文件, 下次下载时通过 Range 请求继续
+    private ProgressListener progressListener; // 下载进度回调, 为空时不统计
+    private long progressInterval = 500; // 进度回调最小间隔时间(毫秒)
+    private long progressBytes = 0; // 进度回调最小间隔字节数, 达到时间或字节任一条件即回调, <= 0 只按时间
+    private int downloadSegments = 1; // 分段下载数, > 1 且服务端支持 Accept-Ranges 时并发下载各个分段, 每段不小于 1Mb
 
     // HTTPS 设置
     private boolean ignoreHttps = false; // 忽略 HTTPS 验证, 既信任所有证书
     private String httpsType = "TLS"; // HTTPS 证书类型, 默认 TLS, 不行试一下 SSL
+    private int sslSessionCacheSize = -1; // TLS 会话缓存条数, 缓存的会话可以恢复, 跳过完整握手, 0 不限制, < 0 使用 JDK 默认
+    private int sslSessionTimeout = -1; // TLS 会话缓存时间(秒), 0 不过期, < 0 使用 JDK 默认
+    private SSLContext sslContext; // 证书设置, 只作用于当前实例(及复制的实例)的连接, 为空时使用 JDK 默认
+    private HostnameVerifier hostnameVerifier; // 主机名校验, 只作用于当前实例的连接, 为空时使用 JDK 默认
+
+    // 连接池设置
+    private Pool pool; // 连接池, 为空时每次请求完成后断开连接
+    private boolean http2 = false; // 使用 HTTP/2 传输, 通过 ALPN 协商, 服务端不支持时使用 HTTP/1.1, 需要 JDK 11+, 低版本 JDK 忽略此设置
+    private NioEngine nioEngine; // 非阻塞引擎, 设置后 http:// 的异步 GET / POST 请求通过选择器发送, 不占用线程等待响应, 复制的实例之间共享
+
+    // 异步请求设置
+    private Executor executor; // 异步请求执行器, 为空时使用默认的守护线程池
+    private int maxAsyncPerHost = 64; // 每个主机同时执行的异步请求数, 超出的排队等待, <= 0 不限制
+    private Dispatcher dispatcher = new Dispatcher(); // 异步请求调度器, 复制的实例之间共享
+    private int batchThreads = 32; // 批量请求线程数, 只在不支持虚拟线程的 JDK 上使用
+
+    // 限流设置
+    private RateLimiter rateLimiter; // 限流器, 为空时不限流, 复制的实例之间共享
+
+    // 重试设置
+    private RetryPolicy retryPolicy; // 重试策略, 为空时不重试, 复制的实例之间共享
+
+    // 熔断设置
+    private CircuitBreaker circuitBreaker; // 熔断器, 为空时不熔断, 复制的实例之间共享
+
+    // 对冲设置
+    private HedgePolicy hedgePolicy; // 对冲策略, 为空时不对冲, 复制的实例之间共享
+
+    // 缓存设置
+    private Cache cache; // GET 响应缓存, 为空时不缓存, 复制的实例之间共享
+    private boolean coalesce = false; // 合并相同的并发 GET / HEAD / OPTIONS 请求, 只发出一个请求, 所有调用共享结果
+    private SingleFlight flights = new SingleFlight(); // 执行中的合并请求, 复制的实例之间共享
 
     /**
      * GET 请求
@@ -156,16 +219,243 @@ public class HTTP {
      * @throws Exception 执行错误
      */
     private String request(String url, String method) throws Exception {
+        // 合并相同的并发请求, 只用于 GET / HEAD / OPTIONS
+        if (coalesce && (METHOD_GET_VALUE.equals(method) || METHOD_HEAD_VALUE.equals(method) || METHOD_OPTIONS_VALUE.equals(method)))
+            return flights.execute($getFlightKey(url, method), () -> $request(url, method));
+        return $request(url, method);
+    }
+
+    private String $request(String url, String method) throws Exception {
+        if (null != cache && METHOD_GET_VALUE.equals(method)) return $getCached(url);
+        return request(url, method, null, this::$handleString);
+    }
+
+    // 合并请求的标识: 方法 + 地址 + 影响响应内容的配置(客户端标识, 压缩, 字符集, 跳转, 共享 Header, Cookie 管理器)
+    // 来源标识每次请求都会变化, 不参与
+    private String $getFlightKey(String url, String method) {
+        StringBuilder key = new StringBuilder(method).append(' ').append(url);
+        key.append('\n').append(userAgent).append('\n').append(gzip).append('\n').append(encoding).append('\n').append(followRedirects);
+        new TreeMap<>(headers).forEach((k, v) -> key.append('\n').append(k).append('=').append(v));
+        CookieManager manager = cookieManager;
+        if (useCookie && null != manager) key.append("\nCookie@").append(System.identityHashCode(manager));
+        return key.toString();
+    }
+
+    // 请求是否带有身份信息: 共享 Header 中的 Authorization / Cookie, 或 Cookie 管理器中有此地址的 Cookie, 这些响应因人而异, 不能共享缓存
+    private boolean $hasCredentials(String url) throws Exception {
+        for (String name : headers.keySet()) {
+            if ("authorization".equalsIgnoreCase(name) || "proxy-authorization".equalsIgnoreCase(name) || "cookie".equalsIgnoreCase(name)) return true;
+        }
+        if (!useCookie) return false;
+        initCookieManager();
+        CookieHandler handler = CookieHandler.getDefault();
+        if (null == handler) return false;
+        for (List<String> values : handler.get($getURL(url).toURI(), new HashMap<>()).values()) {
+            if (!$isEmptyCollection(values)) return true;
+        }
+        return false;
+    }
+
+    // Vary 中的请求头都已包含在缓存标识中时才可缓存: 客户端标识, 压缩格式, 共享 Header; Vary: * 或其他请求头(例如 Referer)不缓存
+    private boolean $isVaryCacheable(Response response) {
+        String vary = response.getHeader("Vary");
+        if ($isEmptyString(vary)) return true;
+        for (String name : vary.split(",")) {
+            String field = name.trim();
+            if (field.isEmpty() || "user-agent".equalsIgnoreCase(field) || "accept-encoding".equalsIgnoreCase(field)) continue;
+            if ("*".equals(field) || headers.keySet().stream().noneMatch(field::equalsIgnoreCase)) return false;
+        }
+        return true;
+    }
+
+    // 带缓存的 GET 请求, 新鲜的缓存直接返回, 过期的缓存带 If-None-Match / If-Modified-Since 重新验证, 304 时沿用缓存内容
+    // 缓存按 方法 + 地址 + 影响响应的配置 区分, 与合并请求相同; 带身份信息(Authorization / Cookie)的请求不使用缓存
+    private String $getCached(String url) throws Exception {
+        if ($isEmptyString(url)) throw new Exception("Url is Empty");
+        if ($hasCredentials(url)) return request(url, METHOD_GET_VALUE, null, this::$handleString);
+        Cache store = cache;
+        String key = $getFlightKey(url, METHOD_GET_VALUE);
+        Cache.Entry entry = store.get(key);
+        if (null != entry && entry.isFresh()) {
+            store.hitCount.incrementAndGet();
+            return $getString(new String(entry.body, encoding));
+        }
+
+        // 条件请求, 校验标识原样发送, 不编码
+        RequestSpec spec = RequestSpec.get(url);
+        spec.refererChain = true; // 与普通 GET 相同使用当前线程的来源
+        if (null != entry && !$isEmptyString(entry.etag)) spec.rawHeaders.put("If-None-Match", entry.etag);
+        if (null != entry && !$isEmptyString(entry.lastModified)) spec.rawHeaders.put("If-Modified-Since", entry.lastModified);
+
+        return request(url, METHOD_GET_VALUE, spec, response -> {
+            if (304 == response.getCode() && null != entry) {
+                store.revalidateCount.incrementAndGet();
+                long maxAge = $isVaryCacheable(response) ? Cache.$maxAge(response) : -1;
+                if (maxAge < 0) store.removeKey(key); // 新响应不允许缓存, 删除旧缓存
+                else store.put(key, entry.refresh(maxAge, response));
+                return $getString(new String(entry.body, encoding));
+            }
+
+            store.missCount.incrementAndGet();
+            long maxAge = 200 == response.getCode() && $isVaryCacheable(response) ? Cache.$maxAge(response) : -1;
+            if (maxAge < 0 && null != entry) store.removeKey(key); // 响应不允许缓存(no-store / private), 删除旧缓存
+            if (maxAge < 0 || null == response.getInputStream()) return $handleString(response); // 不可缓存
+
+            // 长度已知且超过单个缓存上限时不缓存, 不先把响应体读入字节数组
+            long length = -1;
+            try {
+                length = Long.parseLong($getString(response.getHeader("Content-Length")).trim());
+            } catch (NumberFormatException ignored) {
+            }
+            if (length > store.getMaxEntrySize()) return $handleString(response);
+
+            byte[] body = $readBytes(response.getInputStream());
+            store.put(key, new Cache.Entry(key, url, body, response.getHeader("ETag"), response.getHeader("Last-Modified"), System.currentTimeMillis() + maxAge));
+            return $getString(new String(body, encoding));
+        });
+    }
+
+    // 处理简单的请求, spec 为单个请求的附加参数, 可为空, handler 处理响应内容
+    private <T> T request(String url, String method, RequestSpec spec, ResponseHandler<T> handler) throws Exception {
         if ($isEmptyString(url)) throw new Exception("Url is Empty");
 
-        // 处理连接
-        HttpURLConnection connection = getConnection(url);
+        Connector connector = () -> {
+            // 处理连接
+            HttpURLConnection connection = getConnection(url, spec);
+
+            // 处理请求方式
+            try {
+                handleMethod(connection, method);
+            } catch (Exception e) {
+                $releaseConnection(connection, false);
+                throw e;
+            }
+            return connection;
+        };
+
+        // 对冲请求, 只用于 GET / HEAD / OPTIONS
+        HedgePolicy hedge = hedgePolicy;
+        if (null != hedge && hedge.isHedgeable($getString(method, METHOD_GET_VALUE).toUpperCase())) connector = $hedge(hedge, connector);
+
+        return $execute(url, method, connector, handler); // 响应结果
+    }
+
+    // 对冲请求, 第一个请求在延迟时间内没有收到响应头时, 再发出相同的请求, 先收到响应头的请求胜出, 其余请求断开
+    // 延迟时间为最近请求耗时的百分位数, 只有慢的那一小部分请求会多发一次
+    private Connector $hedge(HedgePolicy policy, Connector connector) {
+        return () -> {
+            // 对冲请求在专用执行器中发出, 不占用异步请求执行器, 有界执行器被等待中的请求占满时不会死锁
+            Executor handle = $getHedgeExecutor();
+            Boolean permit = $REQUEST_PERMIT.get(); // 异步请求已预占的请求令牌, 交给第一个请求使用
+            $REQUEST_PERMIT.remove();
+
+            long start = System.nanoTime();
+            long delay = policy.delay();
+            // 最长等待 连接超时 + 读取超时, 都不限制时一直等待
+            long limit = connectionTimeout > 0 && readTimeout > 0 ? TimeUnit.MILLISECONDS.toNanos((long) connectionTimeout + readTimeout) : -1;
+            Hedge hedge = new Hedge();
+            hedge.launch(handle, connector, permit, 0);
+            try {
+                for (int count = 1; ; count++) {
+                    try {
+                        HttpURLConnection connection;
+                        if (count <= policy.maxHedges) connection = hedge.winner.get(delay, TimeUnit.MILLISECONDS);
+                        else if (limit < 0) connection = hedge.winner.get();
+                        else connection = hedge.winner.get(Math.max(0, limit - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+                        policy.record(System.nanoTime() - start, hedge.index > 0);
+                        return connection;
+                    } catch (TimeoutException e) {
+                        if (count > policy.maxHedges) {
+                            hedge.cancel();
+                            throw new SocketTimeoutException(String.format("Hedged Request Timed Out [%s]ms", TimeUnit.NANOSECONDS.toMillis(limit)));
+                        }
+                        // log.debug("Hedge Request [{}] After [{}]ms", count, delay);
+                        policy.hedgedCount.incrementAndGet();
+                        hedge.launch(handle, connector, null, count);
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                hedge.cancel();
+                throw e;
+            }
+        };
+    }
+
+    // 一组对冲请求的状态
+    private class Hedge {
+        private final CompletableFuture<HttpURLConnection> winner = new CompletableFuture<>(); // 第一个收到响应头的连接
+        private final List<HttpURLConnection> connections = new ArrayList<>(); // 已发出的连接
+        private int pending = 0; // 执行中的请求数
+        private Exception error; // 第一个错误, 全部失败时抛出
+        private volatile int index = -1; // 胜出的请求序号, 0 为第一个请求
+
+        // 在执行器中发出一个请求
+        private void launch(Executor executor, Connector connector, Boolean permit, int number) {
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                executor.execute(() -> attempt(connector, permit, number));
+            } catch (RejectedExecutionException e) {
+                fail(e);
+            }
+        }
+
+        private void attempt(Connector connector, Boolean permit, int number) {
+            if (winner.isDone()) {
+                fail(null);
+                return;
+            }
+            if (null != permit) $REQUEST_PERMIT.set(permit);
+            HttpURLConnection connection = null;
+            try {
+                connection = connector.connect();
+                if (!register(connection)) {
+                    $releaseConnection(connection, false);
+                    fail(null);
+                    return;
+                }
+                connection.getResponseCode(); // 等待响应头
+                if (!win(connection, number)) $releaseConnection(connection, false);
+            } catch (Exception e) {
+                if (null != connection) $releaseConnection(connection, false);
+                fail(e);
+            } finally {
+                $REQUEST_PERMIT.remove();
+            }
+        }
+
+        // 记录连接, 已有胜出的请求时返回 false
+        private synchronized boolean register(HttpURLConnection connection) {
+            if (winner.isDone()) return false;
+            connections.add(connection);
+            return true;
+        }
+
+        // 第一个收到响应头的请求胜出, 断开其余连接
+        private synchronized boolean win(HttpURLConnection connection, int number) {
+            pending--;
+            if (winner.isDone()) return false;
+            index = number;
+            winner.complete(connection);
+            for (HttpURLConnection other : connections) if (other != connection) $releaseConnection(other, false);
+            return true;
+        }
 
-        // 处理请求方式
-        handleMethod(connection, method);
+        // 请求失败, 全部失败时返回第一个错误
+        private synchronized void fail(Exception e) {
+            pending--;
+            if (null == error) error = e;
+            if (0 == pending && !winner.isDone()) winner.completeExceptionally(null == error ? new Exception("Hedge Request Failed") : error);
+        }
 
-        // 响应结果
-        return handleResult(connection);
+        // 取消全部请求
+        private synchronized void cancel() {
+            winner.cancel(false);
+            for (HttpURLConnection connection : connections) $releaseConnection(connection, false);
+        }
     }
 
     /**
@@ -246,20 +536,30 @@ public class HTTP {
      * @throws Exception 执行错误
      */
     public String post(String url, boolean putByte, String content) throws Exception {
+        return $send(url, METHOD_POST_VALUE, putByte, content, null, this::$handleString);
+    }
+
+    // 提交文本内容, 用于 POST / PUT 请求, spec 为单个请求的附加参数, 可为空, handler 处理响应内容
+    private <T> T $send(String url, String method, boolean putByte, String content, RequestSpec spec, ResponseHandler<T> handler) throws Exception {
         if ($isEmptyString(url)) throw new Exception("Url is Empty");
         if ($isEmptyString(content)) throw new Exception("Content is Empty");
 
-        // 处理连接
-        HttpURLConnection connection = getConnection(url);
+        return $execute(url, method, () -> {
+            // 处理连接
+            HttpURLConnection connection = getConnection(url, spec);
 
-        // 处理请求方式
-        handleMethod(connection, METHOD_POST_VALUE);
+            try {
+                // 处理请求方式
+                handleMethod(connection, method);
 
-        // 处理提交的内容
-        handleContentData(connection, putByte, content);
-
-        // 响应结果
-        return handleResult(connection);
+                // 处理提交的内容
+                handleContentData(connection, putByte, content);
+            } catch (Exception e) {
+                $releaseConnection(connection, false);
+                throw e;
+            }
+            return connection;
+        }, handler); // 响应结果
     }
 
     /**
@@ -340,19 +640,76 @@ public class HTTP {
      * @throws Exception 执行错误
      */
     public String postMultipart(String url, Map<?, ?> postData, Map<String, String> postFile) throws Exception {
+        return postMultipart(url, postData, postFile, null, this::$handleString);
+    }
+
+    // 表单文件提交, spec 为单个请求的附加参数, 可为空, handler 处理响应内容
+    private <T> T postMultipart(String url, Map<?, ?> postData, Map<String, String> postFile, RequestSpec spec, ResponseHandler<T> handler) throws Exception {
         if ($isEmptyString(url)) throw new Exception("Url is Empty");
 
-        // 处理连接
-        HttpURLConnection connection = getConnection(url);
+        return $execute(url, METHOD_POST_VALUE, () -> {
+            // 处理连接
+            HttpURLConnection connection = getConnection(url, spec);
+
+            try {
+                // 处理请求方式
+                handleMethod(connection, METHOD_POST_VALUE);
+
+                // 处理提交内容
+                handleByteData(connection, postData, postFile);
+            } catch (Exception e) {
+                $releaseConnection(connection, false);
+                throw e;
+            }
+            return connection;
+        }, handler); // 响应结果
+    }
+
+    // 建立连接并发送请求, 失败时自行释放连接, 重试时重新调用, 重新发送请求内容
+    private interface Connector {
+        HttpURLConnection connect() throws Exception;
+    }
 
-        // 处理请求方式
-        handleMethod(connection, METHOD_POST_VALUE);
+    // 执行请求, 按重试策略重试连接失败, 超时, 连接重置以及 429 / 503 等响应
+    // 只在响应交给 handler 之前重试, handler 读取响应过程中的错误不重试
+    // 设置熔断器时, 每次尝试前检查主机熔断状态, 熔断中直接抛出 CircuitOpenException, 收到响应头后记录结果和耗时
+    private <T> T $execute(String url, String method, Connector connector, ResponseHandler<T> handler) throws Exception {
+        RetryPolicy policy = retryPolicy;
+        boolean retryable = null != policy && policy.isRetryable($getString(method, METHOD_GET_VALUE).toUpperCase());
+        CircuitBreaker breaker = circuitBreaker;
+        String host = null == breaker ? null : $getHostKey($getURL(url));
+
+        if (retryable) policy.deposit(); // 每个请求存入重试额度
+        for (int attempt = 1; ; attempt++) {
+            CircuitBreaker.Circuit circuit = null == breaker ? null : breaker.acquire(host); // 熔断中直接失败
+            long start = System.nanoTime();
+            HttpURLConnection connection = null;
+            int code;
+            try {
+                connection = connector.connect();
+                code = connection.getResponseCode();
+            } catch (Exception e) {
+                if (null != connection) $releaseConnection(connection, false);
+                // 网络错误计入熔断统计, 其他错误(连接池等待超时等)与主机无关, 只归还探测名额
+                if (null != circuit) {
+                    if (e instanceof IOException) circuit.record(true, System.nanoTime() - start);
+                    else circuit.release();
+                }
+                long delay = retryable && e instanceof IOException ? policy.delay(attempt, (IOException) e) : -1;
+                if (delay < 0) throw e;
+                // log.debug("Retry [{}] After [{}]ms, Cause [{}]", attempt, delay, e.toString());
+                TimeUnit.MILLISECONDS.sleep(delay);
+                continue;
+            }
+            if (null != circuit) circuit.record(breaker.isFailure(code), System.nanoTime() - start);
 
-        // 处理提交内容
-        handleByteData(connection, postData, postFile);
+            long delay = retryable ? policy.delay(attempt, code, connection.getHeaderField("Retry-After")) : -1;
+            if (delay < 0) return handleResult(connection, handler); // 不需要重试, 或者不能再重试, 返回当前响应
 
-        // 响应结果
-        return handleResult(connection);
+            $releaseConnection(connection, false);
+            // log.debug("Retry [{}] After [{}]ms, Response Code [{}]", attempt, delay, code);
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
     }
 
     /**
@@ -451,196 +808,1030 @@ public class HTTP {
         File file = new File(savePath);
         if (file.exists()) throw new Exception(String.format("File Already Exists [%s]", savePath));
 
-        HttpURLConnection connection = getConnection(url); // 获取连接
+        // 先写入临时文件, 完成后重命名, 断点续传模式下根据临时文件长度继续下载
+        File part = new File(String.format("%s.part", savePath));
+        File info = new File(String.format("%s.part.info", savePath));
+        Properties checkpoint = downloadResume ? $readCheckpoint(url, part, info) : null;
+        long offset = null == checkpoint ? 0 : part.length();
+
+        HttpURLConnection connection = getConnection(url, null); // 获取连接
+        if (offset > 0) {
+            connection.setRequestProperty("Range", String.format("bytes=%s-", offset));
+            connection.setRequestProperty("If-Range", checkpoint.getProperty("validator"));
+        }
+
+        // 服务端返回 206 才继续下载, 否则文件已变化或不支持 Range, 从头下载
+        boolean resumed = false;
+        int code;
+        try {
+            code = connection.getResponseCode();
+            resumed = offset > 0 && 206 == code;
+        } catch (IOException e) {
+            $releaseConnection(connection, false);
+            throw e;
+        }
+
+        // 416: 临时文件可能已经完整(重命名前中断), Content-Range: bytes */1000 与临时文件长度相同时直接完成, 否则删除断点从头下载
+        if (offset > 0 && 416 == code) {
+            long total = $getTotalSize(connection);
+            $releaseConnection(connection, false);
+            if (total > 0 && part.length() == total) {
+                $moveFile(part, file);
+                if (info.exists() && !info.delete()) info.deleteOnExit();
+                return savePath;
+            }
+            if (part.exists() && !part.delete()) part.deleteOnExit();
+            if (info.exists() && !info.delete()) info.deleteOnExit();
+            return downloadFile(url, filePath);
+        }
+        if (!resumed) offset = 0;
+        // log.debug("Download Resume [{}], Offset [{}]", resumed, offset);
 
         // 文件大小
-        int fileSize = connection.getContentLength();
-        // 验证下载大小
-        if (downloadMinSize > fileSize || fileSize > downloadMaxSize) {
-            connection.disconnect();
+        long fileSize = resumed ? $getTotalSize(connection) : connection.getContentLengthLong();
+        // 验证下载大小, 长度未知(分块传输)时在下载过程中验证
+        if (fileSize >= 0 && (downloadMinSize > fileSize || fileSize > downloadMaxSize)) {
+            $releaseConnection(connection, false);
             throw new Exception(String.format("Download Size Range [%s - %s], File Size [%s]", downloadMinSize, downloadMaxSize, fileSize));
         }
 
-        byte[] writeBuffer = new byte[4096]; // 设置缓冲区大小
         boolean createSuccess = $createFolder(savePath); // 创建目录
         if (!createSuccess) {
-            connection.disconnect();
+            $releaseConnection(connection, false);
             throw new Exception("Failed to Create Directory");
         }
-        int saveSize = 0;
+
+        // 分段下载, 续传时不分段
+        int segments = resumed ? 1 : $calcSegments(connection, fileSize);
+        if (segments > 1) return $downloadSegments(url, connection, savePath, fileSize, segments);
+
+        long saveSize = offset;
+        boolean reusable = false; // 完整读取后, 连接池模式下可复用连接
+        boolean success = false;
+        Progress progress = null == progressListener ? null : new Progress(progressListener, fileSize, offset, progressInterval, progressBytes); // 下载进度
         String fileSizeString = $calcFileSize(fileSize); // 下载文件总大小
         // log.debug("Download Start [{}], File Size [{}]", url, fileSizeString);
-        try (InputStream input = connection.getInputStream();
-             FileOutputStream fos = new FileOutputStream(savePath)) {
+        if (downloadResume && !resumed) $writeCheckpoint(url, connection, info);
+        int size = $getBufferSize();
+        byte[] writeBuffer = $BYTE_BUFFERS.acquire(size); // 缓冲区, 从缓冲区池中获取
+        RateLimiter limiter = rateLimiter; // 下载带宽限流
+        String host = $getHostKey(connection.getURL());
+        try (InputStream input = $decodeStream(connection.getInputStream(), connection.getContentEncoding(), decoders);
+             FileOutputStream fos = new FileOutputStream(part, resumed)) {
             // log.debug("contentType = {}", connection.getContentType());
             // log.debug("name = {}", connection.getHeaderField("Content-Disposition"));
             int readLength;
             while (-1 != (readLength = input.read(writeBuffer))) {
                 fos.write(writeBuffer, 0, readLength);
                 saveSize += readLength;
-
-                String percent = $calcPercent(saveSize, fileSize); // 下载百分比进度
-                // log.debug("{}: [{} / {}] => {}", percent, $calcFileSize(saveSize), fileSizeString, savePath);
+                if (saveSize > downloadMaxSize)
+                    throw new IOException(String.format("Download Size Range [%s - %s], File Size Over [%s]", downloadMinSize, downloadMaxSize, saveSize));
+                if (null != progress) progress.add(readLength); // 下载进度, 按时间或字节节流回调
+                if (null != limiter) limiter.acquireBytes(host, readLength);
             }
-
-            File successFile = new File(savePath);
-            if (!successFile.exists()) throw new Exception(String.format("File Download Failed [%s]", url));
-            // log.debug("Download Success, File Size [{}], File Path [ {} ]", fileSizeString, savePath);
-            return savePath;
+            // 连接中断时 HttpURLConnection 按正常结束返回, 长度已知时校验是否完整
+            if (fileSize > 0 && saveSize != fileSize && $isEmptyString(connection.getContentEncoding()))
+                throw new IOException(String.format("Download Incomplete [%s / %s]", saveSize, fileSize));
+            if (saveSize < downloadMinSize)
+                throw new IOException(String.format("Download Size Range [%s - %s], File Size [%s]", downloadMinSize, downloadMaxSize, saveSize));
+            if (null != progress) progress.finish();
+            reusable = true;
+            success = true;
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
         } finally {
-            connection.disconnect();
+            $BYTE_BUFFERS.release(size, writeBuffer);
+            $releaseConnection(connection, reusable);
+            // 非续传模式, 失败时删除临时文件
+            if (!success && !downloadResume) {
+                if (part.exists() && !part.delete()) part.deleteOnExit();
+                if (info.exists() && !info.delete()) info.deleteOnExit();
+            }
         }
+
+        $moveFile(part, file);
+        if (info.exists() && !info.delete()) info.deleteOnExit();
+
+        File successFile = new File(savePath);
+        if (!successFile.exists()) throw new Exception(String.format("File Download Failed [%s]", url));
+        // log.debug("Download Success, File Size [{}], File Path [ {} ]", fileSizeString, savePath);
+        return savePath;
     }
 
-    /**
-     * 根据 url, 获取一个 Http 连接
-     *
-     * @param url 请求地址
-     * @return Http 连接
-     */
-    private HttpURLConnection getConnection(String url) throws Exception {
-        if ($isEmptyString(url)) throw new Exception("Url is Empty");
+    // 读取断点信息, 同一个地址, 有校验标识, 临时文件存在时才可续传, 否则清理旧的临时文件
+    private Properties $readCheckpoint(String url, File part, File info) {
+        Properties checkpoint = new Properties();
+        if (part.exists() && info.exists()) {
+            try (InputStream input = new FileInputStream(info)) {
+                checkpoint.load(input);
+            } catch (IOException e) {
+                checkpoint.clear();
+            }
+            if (url.equals(checkpoint.getProperty("url")) && !$isEmptyString(checkpoint.getProperty("validator")) && part.length() > 0) return checkpoint;
+        }
+        if (part.exists() && !part.delete()) part.deleteOnExit();
+        if (info.exists() && !info.delete()) info.deleteOnExit();
+        return null;
+    }
 
-        // 预处理 HTTPS
-        if (isIgnoreHttps() && $getString(url).toLowerCase().startsWith("https")) {
-            trustEveryone(); // 信任所有 HTTPS 请求
-            setIgnoreHttps(false);
+    // 记录断点信息, 没有强校验标识或者内容有压缩时无法校验续传, 不记录
+    private void $writeCheckpoint(String url, HttpURLConnection connection, File info) {
+        String validator = $getRangeValidator(connection);
+        if ($isEmptyString(validator) || !$isEmptyString(connection.getContentEncoding())) return;
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("url", url);
+        checkpoint.setProperty("validator", validator);
+        checkpoint.setProperty("length", String.valueOf(connection.getContentLengthLong()));
+        try (OutputStream output = new FileOutputStream(info)) {
+            checkpoint.store(output, "HTTP Download Checkpoint");
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
-        // Cookie 管理器
-        initCookieManager();
+    // If-Range 使用的强校验标识, 弱 ETag(W/ 开头) 不能用于 If-Range, 此时使用 Last-Modified, 都没有时为空
+    private static String $getRangeValidator(HttpURLConnection connection) {
+        String etag = $getString(connection.getHeaderField("ETag"));
+        if (!$isEmptyString(etag) && !etag.startsWith("W/")) return etag;
+        return $getString(connection.getHeaderField("Last-Modified"));
+    }
 
-        // 开启请求连接
-        URL requestUrl = $getURL(url);
-        final HttpURLConnection connection = url.startsWith("https") ?
-                (HttpsURLConnection) requestUrl.openConnection() : (HttpURLConnection) requestUrl.openConnection();
+    // 206 响应的文件总大小, 解析 Content-Range: bytes 100-999/1000, 未知时为 -1
+    private static long $getTotalSize(HttpURLConnection connection) {
+        String range = $getString(connection.getHeaderField("Content-Range"));
+        int p = range.lastIndexOf('/');
+        if (p < 0) return -1;
+        try {
+            return Long.parseLong(range.substring(p + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        // 设置来源
-        if ($isEmptyString(referer)) referer = url;
-        connection.setRequestProperty("Referer", referer);
-        referer = url; // 请求后就把当前请求地址做为下一个请求的来源
+    // 计算分段数, 服务端支持 Range, 长度已知, 没有压缩, 有强校验标识, 每段不小于 1Mb, 小于 2 段时不分段
+    // 没有校验标识时无法发送 If-Range, 下载过程中文件变化会拼接出不同版本的内容, 与断点续传相同不分段
+    private int $calcSegments(HttpURLConnection connection, long fileSize) {
+        if (downloadSegments <= 1 || fileSize <= 0) return 1;
+        if (!"bytes".equalsIgnoreCase($getString(connection.getHeaderField("Accept-Ranges")))) return 1;
+        if ($isEmptyString($getRangeValidator(connection))) return 1;
+        if (!$isEmptyString(connection.getContentEncoding())) return 1;
+        return (int) Math.min(downloadSegments, fileSize / SEGMENT_MIN_SIZE);
+    }
 
-        connection.setConnectTimeout(connectionTimeout); // 设置连接超时时间
-        connection.setReadTimeout(readTimeout); // 设置读取超时时间
-        connection.setRequestProperty("User-Agent", userAgent); // 设置客户端标识
-        if (gzip) connection.setRequestProperty("Accept-Encoding", "gzip"); // 设置接受 Gzip
+    // 分段下载, 预分配临时文件, 各段通过 FileChannel 按位置写入, 全部完成后原子重命名为目标文件
+    // 第一段直接读取当前连接, 其余分段通过 Range 请求并发下载, If-Range 保证各段来自同一个文件
+    private String $downloadSegments(String url, HttpURLConnection connection, String savePath, long fileSize, int segments) throws Exception {
+        File part = new File(String.format("%s.part", savePath));
+        File info = new File(String.format("%s.part.info", savePath));
+        if (info.exists() && !info.delete()) info.deleteOnExit(); // 分段下载不续传, 删除旧的断点信息
+        long size = fileSize / segments; // 每段大小, 最后一段包含余数
+        String validator = $getRangeValidator(connection); // $calcSegments 已保证不为空
+
+        ExecutorService service = $newBatchExecutor(segments - 1);
+        Progress progress = null == progressListener ? null : new Progress(progressListener, fileSize, 0, progressInterval, progressBytes); // 各段共享的下载进度
+        boolean success = false;
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(fileSize); // 预分配
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i < segments; i++) {
+                long start = i * size;
+                long end = i == segments - 1 ? fileSize - 1 : start + size - 1;
+                futures.add(service.submit(() -> $downloadRange(url, validator, channel, start, end, fileSize, progress)));
+            }
 
-        // 设置头部信息, 注意编码问题
-        headers.forEach((key, value) -> connection.setRequestProperty($getEncodeString(key), $parseParameter(value)));
+            // 第一段使用当前连接, 读完第一段后断开
+            try (InputStream input = connection.getInputStream()) {
+                $writeRange(input, channel, 0, size, $getHostKey(connection.getURL()), progress);
+            } finally {
+                $releaseConnection(connection, false);
+            }
 
-        // 设置是否跟随跳转
-        connection.setInstanceFollowRedirects(followRedirects);
-        return connection; // 响应 Connection 对象
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            if (null != progress) progress.finish();
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw e;
+        } finally {
+            service.shutdownNow();
+            if (!success && part.exists() && !part.delete()) part.deleteOnExit();
+        }
+
+        $moveFile(part, new File(savePath));
+        // log.debug("Download Success, File Size [{}], Segments [{}], File Path [ {} ]", $calcFileSize(fileSize), segments, savePath);
+        return savePath;
     }
 
-    // 信任所有 HTTPS
-    public void trustEveryone() {
+    // 下载一个分段 [start, end], 服务端必须返回 206, 且 Content-Range 与请求的范围和文件总大小一致, Range 相关 Header 不编码, 直接设置到连接
+    private Void $downloadRange(String url, String validator, FileChannel channel, long start, long end, long fileSize, Progress progress) throws Exception {
+        HttpURLConnection connection = getConnection(url, null);
+        boolean reusable = false;
         try {
-            HttpsURLConnection.setDefaultHostnameVerifier((host_name, session) -> true);
-            SSLContext context = SSLContext.getInstance(httpsType);
+            String range = String.format("bytes=%s-%s", start, end);
+            connection.setRequestProperty("Range", range);
+            if (!$isEmptyString(validator)) connection.setRequestProperty("If-Range", validator);
+
+            int code = connection.getResponseCode();
+            if (206 != code) throw new Exception(String.format("Range Not Satisfied [%s], Response Code [%s]", range, code));
+            String contentRange = $getString(connection.getHeaderField("Content-Range"));
+            if (!$isContentRange(contentRange, start, end, fileSize))
+                throw new Exception(String.format("Content Range Mismatch [%s], Expected [bytes %s-%s/%s]", contentRange, start, end, fileSize));
+            try (InputStream input = connection.getInputStream()) {
+                $writeRange(input, channel, start, end - start + 1, $getHostKey(connection.getURL()), progress);
+                reusable = -1 == input.read();
+            }
+            return null;
+        } finally {
+            $releaseConnection(connection, reusable);
+        }
+    }
 
-            X509TrustManager manager = new X509TrustManager() {
-                @Override
-                public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
-                }
+    // Content-Range: bytes start-end/total 是否与请求的范围一致, 总大小未知(*)时只比较范围
+    private static boolean $isContentRange(String contentRange, long start, long end, long fileSize) {
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+        if (!matcher.matches()) return false;
+        if (Long.parseLong(matcher.group(1)) != start || Long.parseLong(matcher.group(2)) != end) return false;
+        return "*".equals(matcher.group(3)) || Long.parseLong(matcher.group(3)) == fileSize;
+    }
 
-                @Override
-                public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
-                }
+    // 从流中读取 length 字节, 写入文件通道的 position 位置, host 为下载带宽限流的主机标识
+    private void $writeRange(InputStream input, FileChannel channel, long position, long length, String host, Progress progress) throws Exception {
+        int bufferSize = Math.max(SEGMENT_BUFFER_SIZE, $getBufferSize());
+        byte[] cache = $BYTE_BUFFERS.acquire(bufferSize);
+        RateLimiter limiter = rateLimiter;
+        try {
+            long remain = length;
+            long offset = position;
+            while (remain > 0) {
+                int count = input.read(cache, 0, (int) Math.min(cache.length, remain));
+                if (-1 == count) throw new IOException(String.format("Download Range Incomplete, Position [%s], Remain [%s]", position, remain));
+                ByteBuffer buffer = ByteBuffer.wrap(cache, 0, count);
+                while (buffer.hasRemaining()) offset += channel.write(buffer, offset);
+                remain -= count;
+                if (null != progress) progress.add(count);
+                if (null != limiter) limiter.acquireBytes(host, count);
+            }
+        } finally {
+            $BYTE_BUFFERS.release(bufferSize, cache);
+        }
+    }
 
-                @Override
-                public X509Certificate[] getAcceptedIssuers() {
-                    return new X509Certificate[0];
-                }
-            };
-            context.init(null, new X509TrustManager[]{manager}, new SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
-        } catch (NoSuchAlgorithmException | KeyManagementException ignored) {
+    // 原子重命名文件, 文件系统不支持时普通移动
+    private static void $moveFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath());
         }
     }
 
     /**
-     * 设置 HTTPS 请求证书
+     * 异步 GET 请求
+     * 异步请求在调用时复制当前配置, 之后修改配置不影响已提交的请求
      *
-     * @param filePath 证书路径
-     * @param password 证书密码
-     * @param tlsType  TLS 类型, 如 TLSv1
+     * @param url 请求地址
+     * @return 响应结果 => String
      */
-    public void setSSL(String filePath, String password, String tlsType) {
-        try {
-            KeyStore clientStore = KeyStore.getInstance("PKCS12");
-            clientStore.load(new FileInputStream(filePath), password.toCharArray());
+    public CompletableFuture<String> getAsync(String url) {
+        if ($isNioRequest(url, true)) return $nioAsync(RequestSpec.get(url));
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.get(url));
+    }
 
-            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-            kmf.init(clientStore, password.toCharArray());
-            KeyManager[] kms = kmf.getKeyManagers();
+    /**
+     * 异步 GET 请求
+     *
+     * @param uri             请求地址
+     * @param queryParameters 替换地址参数
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> getAsync(String uri, Map<?, ?> queryParameters) {
+        if ($isNioRequest(uri, true)) return $nioAsync(RequestSpec.get($parseUrlOfParameters(uri, queryParameters)));
+        HTTP http = copy();
+        return $submitAsync(uri, () -> http.get(uri, queryParameters));
+    }
 
-            KeyStore trustStore = KeyStore.getInstance("JKS");
-            String cacertsPath = System.getProperty("java.home") + "/lib/security/cacerts";
-            trustStore.load(new FileInputStream(cacertsPath), "changeit".toCharArray());
+    /**
+     * 异步 POST 请求
+     * 模拟表单提交
+     *
+     * @param url      请求地址
+     * @param formData 提交的参数集合
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> postAsync(String url, Map<?, ?> formData) {
+        if ($isNioRequest(url, false)) return $nioAsync(RequestSpec.post(url, formData));
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.post(url, formData));
+    }
 
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init(trustStore);
-            TrustManager[] tms = tmf.getTrustManagers();
+    /**
+     * 异步 POST 请求
+     * 默认提交字节流提交
+     *
+     * @param url     请求地址
+     * @param content 传递文本内容
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> postAsync(String url, String content) {
+        if ($isNioRequest(url, false)) return $nioAsync(RequestSpec.post(url, content));
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.post(url, content));
+    }
 
-            SSLContext sslContext = SSLContext.getInstance(tlsType); // "TLSv1"
-            sslContext.init(kms, tms, new SecureRandom());
-            SSLSocketFactory ssl = sslContext.getSocketFactory();
-            HttpsURLConnection.setDefaultSSLSocketFactory(ssl);
-        } catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException | UnrecoverableKeyException | KeyManagementException e) {
-            e.printStackTrace();
-        }
+    /**
+     * 异步 POST 请求
+     *
+     * @param url      请求地址
+     * @param postData 表单数据
+     * @param postFile 上传的文件数据
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> postMultipartAsync(String url, Map<?, ?> postData, Map<String, String> postFile) {
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.postMultipart(url, postData, postFile));
     }
 
     /**
-     * 默认: TLSv1 类型
+     * 异步上传文件
      *
-     * @param filePath 证书路径
-     * @param password 证书密码
+     * @param url  请求地址
+     * @param path 本地文件路径
+     * @return 响应结果 => String
      */
-    public void setSSL(String filePath, String password) {
-        setSSL(filePath, password, "TLSv1");
+    public CompletableFuture<String> uploadAsync(String url, String path) {
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.upload(url, path));
     }
 
-    // 添加 Cookie
-    public HTTP addCookie(String uri, String domain, String path, String key, String value) throws URISyntaxException {
-        if ($isAnyEmptyString(uri, domain, path, key, value)) return this;
+    /**
+     * 异步上传文件
+     *
+     * @param url         请求地址
+     * @param uploadFiles 上传文件
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> uploadAsync(String url, Map<String, String> uploadFiles) {
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.upload(url, uploadFiles));
+    }
 
-        HttpCookie cookie = new HttpCookie($getString(key), $getString(value));
-        cookie.setDomain($getString(domain));
-        cookie.setPath($getString(path));
-        return addCookie(uri, cookie);
+    /**
+     * 异步下载文件到指定的文件夹, 并且根据 年/月日 文件夹分割
+     *
+     * @param url            下载路径
+     * @param realFolderPath 保存到的根目录
+     * @return 本地文件全路径
+     */
+    public CompletableFuture<String> downloadAsync(String url, String realFolderPath) {
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.download(url, realFolderPath));
     }
 
-    // 添加 Cookie
-    public HTTP addCookie(String uri, HttpCookie... cookies) throws URISyntaxException {
-        if ($isEmptyString(uri) || $isEmptyCollection(cookies)) return this;
-        return addCookie(new URI(uri), cookies);
+    /**
+     * 异步下载文件
+     *
+     * @param url      下载路径
+     * @param filePath 保存文件路径, 完整路径包括文件名后缀
+     * @return 本地文件全路径
+     */
+    public CompletableFuture<String> downloadFileAsync(String url, String filePath) {
+        HTTP http = copy();
+        return $submitAsync(url, () -> http.downloadFile(url, filePath));
     }
 
-    // 添加 Cookie
-    public HTTP addCookie(URI uri, HttpCookie... cookies) {
-        if (null == uri || $isEmptyCollection(cookies)) return this;
+    // 提交异步请求, 按主机限制同时执行的数量
+    private <T> CompletableFuture<T> $submitAsync(String url, Callable<T> call) {
+        return $submitAsync(url, null == executor ? $getDefaultExecutor() : executor, call);
+    }
 
-        CookieStore store = getCookieStore();
-        if (null == store) return null;
+    private <T> CompletableFuture<T> $submitAsync(String url, Executor handle, Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        String key;
+        try {
+            key = $getHostKey($getURL(url));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (null == rateLimiter) {
+            dispatcher.dispatch(key, maxAsyncPerHost, new Dispatcher.Task<>(handle, call, future));
+            return future;
+        }
 
-        for (HttpCookie cookie : cookies) store.add(uri, cookie);
-        return this;
+        // 限流, 预占请求令牌, 需要等待时延迟提交, 不占用线程等待, 执行时第一个请求不再重复获取令牌
+        long delay = rateLimiter.reserveRequest(key);
+        Dispatcher.Task<T> task = new Dispatcher.Task<>(handle, () -> {
+            $REQUEST_PERMIT.set(Boolean.TRUE);
+            try {
+                return call.call();
+            } finally {
+                $REQUEST_PERMIT.remove();
+            }
+        }, future);
+        if (delay <= 0) dispatcher.dispatch(key, maxAsyncPerHost, task);
+        else $getScheduler().schedule(() -> dispatcher.dispatch(key, maxAsyncPerHost, task), delay, TimeUnit.NANOSECONDS);
+        return future;
     }
 
-    // 添加头部信息
-    public HTTP addHeader(String key, Object value) {
-        if ($isEmptyString(key) || null == value) return this;
-        headers.put(key, value);
-        return this;
+    // 异步请求已预占的请求令牌, 只在执行异步任务的线程中有效
+    private static final ThreadLocal<Boolean> $REQUEST_PERMIT = new ThreadLocal<>();
+
+    // 获取请求令牌, 异步请求已预占时直接使用, 否则按限流等待
+    private void $acquireRequest(URL url) throws InterruptedException {
+        if (null != $REQUEST_PERMIT.get()) {
+            $REQUEST_PERMIT.remove();
+            return;
+        }
+        RateLimiter limiter = rateLimiter;
+        if (null != limiter) limiter.acquireRequest($getHostKey(url));
     }
 
-    // Cookie 管理, 初始化 Cookie 管理器
-    private void initCookieManager() {
+    // 是否通过非阻塞引擎发送, 只处理 http://, 设置了缓存或合并请求的 GET 走阻塞连接, 保证缓存和合并生效
+    private boolean $isNioRequest(String url, boolean cacheable) {
+        if (cacheable && (null != cache || coalesce)) return false;
+        return null != nioEngine && $getString(url).toLowerCase().startsWith("http://");
+    }
+
+    private static final int NIO_MAX_REDIRECTS = 20; // 最多跟随跳转次数, 与 HttpURLConnection 默认值相同
+
+    // 通过非阻塞引擎发送异步请求, 使用连接超时, 读取超时, 跟随跳转设置, 不经过重试, 熔断, 对冲, 缓存和合并请求
+    private CompletableFuture<String> $nioAsync(RequestSpec spec) {
+        NioEngine engine = nioEngine;
+        String method = $getString(spec.method, METHOD_GET_VALUE).toUpperCase();
+        URL url;
+        Map<String, String> requestHeaders;
+        byte[] body = null;
+        try {
+            url = $getURL(spec.url);
+            initCookieManager(); // Cookie 管理器
+            requestHeaders = $getRequestHeaders(spec.url, spec);
+
+            // 提交内容, 与阻塞模式相同: 文本按系统默认编码, 表单按 encoding 编码
+            if (METHOD_POST_VALUE.equals(method) || METHOD_PUT_VALUE.equals(method)) {
+                requestHeaders.putIfAbsent("Content-Type", contentType);
+                String content = null != spec.content ? spec.content : $parseFormDataToString(spec.formData);
+                body = null != spec.content ? content.getBytes() : content.getBytes(encoding);
+                if (compressThreshold >= 0 && content.length() >= compressThreshold) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+                        out.write(body);
+                    }
+                    body = compressed.toByteArray();
+                    requestHeaders.put("Content-Encoding", "gzip");
+                }
+            }
+        } catch (Exception e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return $nioSend(engine, method, url, requestHeaders, body, 0);
+    }
+
+    // 发送一次请求, 跳转时继续请求新地址, 与 HttpURLConnection 相同: 只跟随同协议的跳转, POST / PUT 遇到 301 / 302 / 303 改为 GET, 307 / 308 只跟随 GET / HEAD
+    private CompletableFuture<String> $nioSend(NioEngine engine, String method, URL url, Map<String, String> requestHeaders, byte[] body, int redirects) {
+        URI uri;
+        Map<String, String> hopHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        hopHeaders.putAll(requestHeaders);
+        try {
+            uri = url.toURI();
+            // 发送 Cookie, 每次跳转按新地址获取
+            CookieHandler cookieHandler = useCookie ? CookieHandler.getDefault() : null;
+            if (null != cookieHandler) cookieHandler.get(uri, new HashMap<>()).forEach((key, values) -> {
+                if (!$isEmptyCollection(values)) hopHeaders.put(key, String.join("; ", values));
+            });
+        } catch (Exception e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        // 限流, 预占请求令牌, 需要等待时延迟发送
+        Supplier<CompletableFuture<NioResponse>> send = () -> engine.execute(method, url, hopHeaders, body, connectionTimeout, readTimeout);
+        CompletableFuture<NioResponse> response;
+        long delay = null == rateLimiter ? 0 : rateLimiter.reserveRequest($getHostKey(url));
+        if (delay <= 0) response = send.get();
+        else {
+            response = new CompletableFuture<>();
+            CompletableFuture<NioResponse> delayed = response;
+            $getScheduler().schedule(() -> {
+                send.get().whenComplete((result, error) -> {
+                    if (null == error) delayed.complete(result);
+                    else delayed.completeExceptionally(error);
+                });
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+        return response.thenCompose(result -> {
+            try (NioResponse closeable = result) {
+                URL location = $getNioRedirect(method, url, closeable, redirects);
+                if (null == location) return CompletableFuture.completedFuture($handleNioString(uri, method, closeable));
+
+                // 保存跳转响应的 Cookie, 继续请求新地址
+                CookieHandler cookieHandler = useCookie ? CookieHandler.getDefault() : null;
+                if (null != cookieHandler) cookieHandler.put(uri, closeable.getHeaders());
+                int code = closeable.getCode();
+                boolean toGet = (301 == code || 302 == code || 303 == code) && !METHOD_GET_VALUE.equals(method) && !METHOD_HEAD_VALUE.equals(method);
+                if (!toGet) return $nioSend(engine, method, location, requestHeaders, body, redirects + 1);
+                Map<String, String> getHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                getHeaders.putAll(requestHeaders);
+                getHeaders.remove("Content-Type");
+                getHeaders.remove("Content-Encoding");
+                return $nioSend(engine, METHOD_GET_VALUE, location, getHeaders, null, redirects + 1);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    // 跳转地址, 不跟随时为空
+    private URL $getNioRedirect(String method, URL url, NioResponse response, int redirects) throws Exception {
+        int code = response.getCode();
+        if (!followRedirects || (301 != code && 302 != code && 303 != code && 307 != code && 308 != code)) return null;
+        if ((307 == code || 308 == code) && !METHOD_GET_VALUE.equals(method) && !METHOD_HEAD_VALUE.equals(method)) return null;
+        String location = response.getHeader("Location");
+        if ($isEmptyString(location)) return null;
+        if (redirects >= NIO_MAX_REDIRECTS) throw new ProtocolException(String.format("Server Redirected Too Many Times [%s]", NIO_MAX_REDIRECTS));
+        URL target = new URL(url, location);
+        return url.getProtocol().equalsIgnoreCase(target.getProtocol()) ? target : null; // 不跟随跨协议跳转
+    }
+
+    // 非阻塞引擎的响应转为 String, 与 $handleString 相同
+    private String $handleNioString(URI uri, String method, NioResponse response) throws Exception {
+        // 保存 Cookie
+        CookieHandler cookieHandler = useCookie ? CookieHandler.getDefault() : null;
+        if (null != cookieHandler) cookieHandler.put(uri, response.getHeaders());
+
+        // Head 请求响应体
+        if (METHOD_HEAD_VALUE.equals(method)) {
+            Map<String, List<String>> responseHeader = response.getHeaders();
+            if ($isEmptyCollection(responseHeader)) return $STRING_EMPTY_VALUE;
+            return responseHeader.keySet().stream().map(key -> String.format("\r\n%s=%s", key, responseHeader.get(key))).reduce(String::concat).orElse($STRING_EMPTY_VALUE);
+        }
+
+        // 其他方法响应
+        if (0 == response.getContentLength()) return $STRING_EMPTY_VALUE;
+        return $parseString($decodeStream(response.getInputStream(), response.getHeader("Content-Encoding"), decoders));
+    }
+
+    /**
+     * 批量请求, 所有请求共享当前配置, 单个请求的 Header / 来源由 RequestSpec 指定, 结果按输入顺序返回
+     * JDK 21+ 每个请求使用一个虚拟线程, 低版本使用有界线程池, 大小为 batchThreads
+     * 每个主机同时执行的数量同样受 maxAsyncPerHost 限制
+     *
+     * @param specs 请求列表
+     * @return 响应结果 => String, 顺序与 specs 一致
+     * @throws Exception 任意请求失败, 抛出第一个错误, 其余错误附加到 suppressed
+     */
+    public List<String> executeAll(List<RequestSpec> specs) throws Exception {
+        if ($isEmptyCollection(specs)) return new ArrayList<>();
+
+        ExecutorService service = $newBatchExecutor(specs.size());
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>(specs.size());
+            for (RequestSpec spec : specs) {
+                if (null == spec) throw new Exception("Request Spec is Empty");
+                futures.add($submitAsync(spec.url, service, () -> execute(spec)));
+            }
+
+            List<String> results = new ArrayList<>(futures.size());
+            Exception error = null;
+            for (CompletableFuture<String> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    if (null == error) error = cause;
+                    else error.addSuppressed(cause);
+                    results.add(null);
+                }
+            }
+            if (null != error) throw error;
+            return results;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 执行单个请求
+     * 单个请求的 Header / 来源只作用于本次请求, 不修改共享配置, 同一个 HTTP 实例可在多个线程中同时使用
+     *
+     * @param spec 请求参数
+     * @return 响应结果 => String
+     * @throws Exception 执行错误
+     */
+    public String execute(RequestSpec spec) throws Exception {
+        return execute(spec, this::$handleString);
+    }
+
+    /**
+     * 执行单个请求, 由 handler 读取响应内容
+     * 响应体以流的方式交给 handler, 不会整体读入内存, handler 返回后释放连接
+     *
+     * @param spec    请求参数
+     * @param handler 响应处理, 可读取 InputStream / ReadableByteChannel / Reader / 分块文本
+     * @param <T>     处理结果类型
+     * @return handler 的处理结果
+     * @throws Exception 执行错误
+     */
+    public <T> T execute(RequestSpec spec, ResponseHandler<T> handler) throws Exception {
+        if (null == spec) throw new Exception("Request Spec is Empty");
+        if (null == handler) throw new Exception("Response Handler is Empty");
+        String method = $getString(spec.method, METHOD_GET_VALUE).toUpperCase();
+        if (METHOD_POST_VALUE.equals(method) && !$isEmptyCollection(spec.files)) return postMultipart(spec.url, spec.formData, spec.files, spec, handler);
+        if (METHOD_POST_VALUE.equals(method) || METHOD_PUT_VALUE.equals(method)) {
+            String content = null != spec.content ? spec.content : $parseFormDataToString(spec.formData);
+            return $send(spec.url, method, null != spec.content, content, spec, handler);
+        }
+        return request(spec.url, method, spec, handler);
+    }
+
+    /**
+     * GET 请求, 由 handler 以流的方式读取响应内容
+     *
+     * @param url     请求地址
+     * @param handler 响应处理
+     * @param <T>     处理结果类型
+     * @return handler 的处理结果
+     * @throws Exception 执行错误
+     */
+    public <T> T stream(String url, ResponseHandler<T> handler) throws Exception {
+        return execute(RequestSpec.get(url), handler);
+    }
+
+    /**
+     * 异步执行单个请求
+     *
+     * @param spec 请求参数
+     * @return 响应结果 => String
+     */
+    public CompletableFuture<String> executeAsync(RequestSpec spec) {
+        if (null == spec) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(new Exception("Request Spec is Empty"));
+            return future;
+        }
+        if ($isNioRequest(spec.url, false) && $isEmptyCollection(spec.files)) return $nioAsync(spec);
+        return $submitAsync(spec.url, () -> execute(spec));
+    }
+
+    // 批量请求执行器, JDK 21+ 使用虚拟线程
+    private ExecutorService $newBatchExecutor(int size) {
+        if (null != $VIRTUAL_EXECUTOR_METHOD) {
+            try {
+                return (ExecutorService) $VIRTUAL_EXECUTOR_METHOD.invoke(null);
+            } catch (ReflectiveOperationException ignored) {
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(size, batchThreads)), runnable -> {
+            Thread thread = new Thread(runnable, String.format("HTTP-Batch-%s", count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // JDK 21+ Executors.newVirtualThreadPerTaskExecutor, 低版本为空
+    private static final java.lang.reflect.Method $VIRTUAL_EXECUTOR_METHOD = $findVirtualExecutorMethod();
+
+    private static java.lang.reflect.Method $findVirtualExecutorMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 复制当前配置, 得到一个独立的 HTTP 实例
+     * Header 快照只读共享, 之后各自修改互不影响, Cookie 管理器, 连接池, 异步调度器共享
+     *
+     * @return 新的 HTTP 实例
+     */
+    public HTTP copy() {
+        HTTP http = new HTTP();
+        http.connectionTimeout = connectionTimeout;
+        http.readTimeout = readTimeout;
+        http.encoding = encoding;
+        http.contentType = contentType;
+        String previous = previousUrl.get(); // 复制时带上当前线程的来源
+        http.referer = $isEmptyString(previous) ? referer : previous;
+        http.userAgent = userAgent;
+        http.gzip = gzip;
+        http.decoders = decoders;
+        http.compressThreshold = compressThreshold;
+        http.followRedirects = followRedirects;
+        http.headers = headers;
+        http.useCookie = useCookie;
+        http.cookieManager = cookieManager;
+        http.downloadMinSize = downloadMinSize;
+        http.downloadMaxSize = downloadMaxSize;
+        http.downloadSegments = downloadSegments;
+        http.downloadResume = downloadResume;
+        http.bufferSize = bufferSize;
+        http.progressListener = progressListener;
+        http.progressInterval = progressInterval;
+        http.progressBytes = progressBytes;
+        http.ignoreHttps = ignoreHttps;
+        http.httpsType = httpsType;
+        http.sslSessionCacheSize = sslSessionCacheSize;
+        http.sslSessionTimeout = sslSessionTimeout;
+        http.sslContext = sslContext;
+        http.hostnameVerifier = hostnameVerifier;
+        http.pool = pool;
+        http.http2 = http2;
+        http.nioEngine = nioEngine;
+        http.executor = executor;
+        http.maxAsyncPerHost = maxAsyncPerHost;
+        http.dispatcher = dispatcher;
+        http.batchThreads = batchThreads;
+        http.rateLimiter = rateLimiter;
+        http.retryPolicy = retryPolicy;
+        http.circuitBreaker = circuitBreaker;
+        http.hedgePolicy = hedgePolicy;
+        http.cache = cache;
+        http.coalesce = coalesce;
+        http.flights = flights;
+        return http;
+    }
+
+    /**
+     * 根据 url, 获取一个 Http 连接
+     *
+     * @param url 请求地址
+     * @return Http 连接
+     */
+    private HttpURLConnection getConnection(String url, RequestSpec spec) throws Exception {
+        if ($isEmptyString(url)) throw new Exception("Url is Empty");
+
+        // Cookie 管理器
+        initCookieManager();
+
+        // 开启请求连接
+        URL requestUrl = $getURL(url);
+        $acquireRequest(requestUrl); // 限流, 在占用连接名额之前等待
+        final HttpURLConnection connection;
+        if ($isHttp2Connection(url)) // HTTP/2 传输, 同一主机的请求在一个连接上多路复用
+            connection = new Http2Connection(requestUrl, Http2.INSTANCE, useCookie ? CookieHandler.getDefault() : null, $getConnectionSSLContext());
+        else connection = url.startsWith("https") ?
+                (HttpsURLConnection) requestUrl.openConnection() : (HttpURLConnection) requestUrl.openConnection();
+
+        // HTTPS 设置只作用于当前连接, 不修改 JVM 全局默认值, 不同证书的实例可以同时使用
+        if (connection instanceof HttpsURLConnection) {
+            SSLContext context = $getConnectionSSLContext();
+            if (null != context) ((HttpsURLConnection) connection).setSSLSocketFactory($getSSLSocketFactory(context));
+            HostnameVerifier verifier = ignoreHttps ? $TRUST_ALL_HOSTS : hostnameVerifier;
+            if (null != verifier) ((HttpsURLConnection) connection).setHostnameVerifier(verifier);
+        }
+
+        connection.setConnectTimeout(connectionTimeout); // 设置连接超时时间
+        connection.setReadTimeout(readTimeout); // 设置读取超时时间
+        $getRequestHeaders(url, spec).forEach(connection::setRequestProperty); // 设置来源, 客户端标识, 头部信息
+
+        // 设置是否跟随跳转
+        connection.setInstanceFollowRedirects(followRedirects);
+
+        // 连接池模式, 占用一个主机连接名额
+        if (null != pool) pool.lease(connection);
+        return connection; // 响应 Connection 对象
+    }
+
+    // 请求头: 来源, 客户端标识, 压缩格式, 共享 Header, 单个请求的 Header, 名称不区分大小写, 后设置的覆盖先设置的
+    private Map<String, String> $getRequestHeaders(String url, RequestSpec spec) {
+        Map<String, String> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        // 设置来源, 单个请求指定的来源优先, 其次是当前线程上一个请求地址(只有普通请求方法使用), 再次是设置的来源, 都为空时使用请求地址
+        // 共享配置在请求过程中只读, 上一个请求地址保存在当前线程中, 不同线程的请求不会互相影响
+        String source = null == spec ? null : spec.referer;
+        if ($isEmptyString(source)) {
+            boolean chain = null == spec || spec.refererChain;
+            String previous = chain ? previousUrl.get() : null;
+            if ($isEmptyString(previous)) previous = referer;
+            source = $isEmptyString(previous) ? url : previous;
+            if (chain) previousUrl.set(url); // 请求后就把当前请求地址做为当前线程下一个请求的来源
+        }
+        result.put("Referer", source);
+
+        result.put("User-Agent", userAgent); // 设置客户端标识
+        if (gzip) result.put("Accept-Encoding", String.join(", ", decoders.keySet())); // 设置接受的压缩格式
+
+        // 设置头部信息, 注意编码问题, 单个请求的 Header 覆盖共享 Header
+        headers.forEach((key, value) -> result.put($getEncodeString(key), $parseParameter(value)));
+        if (null != spec) spec.headers.forEach((key, value) -> result.put($getEncodeString(key), $parseParameter(value)));
+        if (null != spec) result.putAll(spec.rawHeaders);
+        return result;
+    }
+
+    // 信任所有 HTTPS, 只作用于当前实例
+    public void trustEveryone() {
+        try {
+            sslContext = $getTrustAllContext();
+            hostnameVerifier = $TRUST_ALL_HOSTS;
+        } catch (Exception ignored) {
+        }
+    }
+
+    // 不校验主机名
+    private static final HostnameVerifier $TRUST_ALL_HOSTS = (host_name, session) -> true;
+
+    // 信任所有证书的 SSLContext, 按 httpsType 缓存
+    private SSLContext $getTrustAllContext() throws Exception {
+        return $getSSLContext(String.format("trust-all|%s", httpsType), () -> {
+            SSLContext context = SSLContext.getInstance(httpsType);
+            X509TrustManager manager = new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            };
+            context.init(null, new X509TrustManager[]{manager}, new SecureRandom());
+            return context;
+        });
+    }
+
+    // 当前连接使用的 SSLContext, 忽略 HTTPS 验证时信任所有证书, 否则使用设置的证书, 都没有时为空
+    // 是否使用 HTTP/2 传输, HttpClient 不支持自定义主机名校验, HTTPS 请求设置了主机名校验或忽略 HTTPS 验证时使用 HttpURLConnection, 保证校验行为一致
+    private boolean $isHttp2Connection(String url) {
+        if (!http2 || null == Http2.INSTANCE) return false;
+        return !url.startsWith("https") || (!ignoreHttps && null == hostnameVerifier);
+    }
+
+    private SSLContext $getConnectionSSLContext() throws Exception {
+        return ignoreHttps ? $getTrustAllContext() : sslContext;
+    }
+
+    /**
+     * 设置 HTTPS 请求证书, 只作用于当前实例
+     * 同一个证书文件(路径, 修改时间, 大小, 密码相同)只加载一次, SSLContext 缓存复用, TLS 会话可以恢复
+     *
+     * @param filePath 证书路径
+     * @param password 证书密码
+     * @param tlsType  TLS 类型, 如 TLSv1
+     */
+    public void setSSL(String filePath, String password, String tlsType) {
+        try {
+            File file = new File(filePath);
+            String key = String.format("keystore|%s|%s|%s|%s|%s", file.getAbsolutePath(), file.lastModified(), file.length(), $sha256(password), tlsType);
+            SSLContext context = $getSSLContext(key, () -> {
+                KeyStore clientStore = KeyStore.getInstance("PKCS12");
+                try (InputStream input = new FileInputStream(file)) {
+                    clientStore.load(input, password.toCharArray());
+                }
+
+                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                kmf.init(clientStore, password.toCharArray());
+                KeyManager[] kms = kmf.getKeyManagers();
+
+                SSLContext keyContext = SSLContext.getInstance(tlsType); // "TLSv1"
+                keyContext.init(kms, $getDefaultTrustManagers(), new SecureRandom());
+                return keyContext;
+            });
+            sslContext = context; // 只作用于当前实例
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 默认: TLSv1 类型
+     *
+     * @param filePath 证书路径
+     * @param password 证书密码
+     */
+    public void setSSL(String filePath, String password) {
+        setSSL(filePath, password, "TLSv1");
+    }
+
+    // SSLContext 缓存, 配置 => SSLContext, 同一配置共享一个 SSLContext, 会话缓存在 SSLContext 中, 重新创建会丢失可恢复的会话
+    private static final Map<String, SSLContext> $SSL_CONTEXTS = new ConcurrentHashMap<>();
+    // SSLSocketFactory 缓存, 每个 SSLContext 一个
+    private static final Map<SSLContext, SSLSocketFactory> $SSL_FACTORIES = new ConcurrentHashMap<>();
+    // JDK 默认信任证书 (cacerts), 只加载一次
+    private static volatile TrustManager[] $DEFAULT_TRUST_MANAGERS;
+
+    // 按配置获取 SSLContext, 没有时创建并设置会话缓存
+    private SSLContext $getSSLContext(String key, Callable<SSLContext> factory) throws Exception {
+        String config = String.format("%s|%s|%s", key, sslSessionCacheSize, sslSessionTimeout);
+        SSLContext context = $SSL_CONTEXTS.get(config);
+        if (null != context) return context;
+        synchronized ($SSL_CONTEXTS) {
+            context = $SSL_CONTEXTS.get(config);
+            if (null != context) return context;
+            context = factory.call();
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if (null != sessions && sslSessionCacheSize >= 0) sessions.setSessionCacheSize(sslSessionCacheSize);
+            if (null != sessions && sslSessionTimeout >= 0) sessions.setSessionTimeout(sslSessionTimeout);
+            $SSL_CONTEXTS.put(config, context);
+            return context;
+        }
+    }
+
+    private static SSLSocketFactory $getSSLSocketFactory(SSLContext context) {
+        return $SSL_FACTORIES.computeIfAbsent(context, SSLContext::getSocketFactory);
+    }
+
+    // 加载 JDK 默认信任证书
+    private static TrustManager[] $getDefaultTrustManagers() throws Exception {
+        TrustManager[] managers = $DEFAULT_TRUST_MANAGERS;
+        if (null != managers) return managers;
+        synchronized ($SSL_CONTEXTS) {
+            if (null != $DEFAULT_TRUST_MANAGERS) return $DEFAULT_TRUST_MANAGERS;
+            KeyStore trustStore = KeyStore.getInstance("JKS");
+            String cacertsPath = System.getProperty("java.home") + "/lib/security/cacerts";
+            try (InputStream input = new FileInputStream(cacertsPath)) {
+                trustStore.load(input, "changeit".toCharArray());
+            }
+
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(trustStore);
+            $DEFAULT_TRUST_MANAGERS = tmf.getTrustManagers();
+            return $DEFAULT_TRUST_MANAGERS;
+        }
+    }
+
+    // 清空 SSLContext 缓存, 证书内容变化但文件信息没变时调用
+    public static void clearSSLCache() {
+        synchronized ($SSL_CONTEXTS) {
+            $SSL_CONTEXTS.clear();
+            $SSL_FACTORIES.clear();
+            $DEFAULT_TRUST_MANAGERS = null;
+        }
+    }
+
+    // 字符串 SHA-256, 十六进制
+    private static String $sha256(String value) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest($getString(value).getBytes("UTF-8"));
+        StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (byte b : digest) builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+
+    // 添加 Cookie
+    public HTTP addCookie(String uri, String domain, String path, String key, String value) throws URISyntaxException {
+        if ($isAnyEmptyString(uri, domain, path, key, value)) return this;
+
+        HttpCookie cookie = new HttpCookie($getString(key), $getString(value));
+        cookie.setDomain($getString(domain));
+        cookie.setPath($getString(path));
+        return addCookie(uri, cookie);
+    }
+
+    // 添加 Cookie
+    public HTTP addCookie(String uri, HttpCookie... cookies) throws URISyntaxException {
+        if ($isEmptyString(uri) || $isEmptyCollection(cookies)) return this;
+        return addCookie(new URI(uri), cookies);
+    }
+
+    // 添加 Cookie
+    public HTTP addCookie(URI uri, HttpCookie... cookies) {
+        if (null == uri || $isEmptyCollection(cookies)) return this;
+
+        CookieStore store = getCookieStore();
+        if (null == store) return null;
+
+        for (HttpCookie cookie : cookies) store.add(uri, cookie);
+        return this;
+    }
+
+    // 注册响应解码器, 例如: addDecoder("br", BrotliInputStream::new), 复制后整体替换
+    public synchronized HTTP addDecoder(String contentEncoding, ContentDecoder decoder) {
+        if ($isEmptyString(contentEncoding) || null == decoder) return this;
+        Map<String, ContentDecoder> update = new LinkedHashMap<>(decoders);
+        update.put($getString(contentEncoding).toLowerCase(), decoder);
+        decoders = Collections.unmodifiableMap(update);
+        return this;
+    }
+
+    // 添加头部信息, 复制后整体替换, 不影响正在读取旧快照的请求
+    public synchronized HTTP addHeader(String key, Object value) {
+        if ($isEmptyString(key) || null == value) return this;
+        Map<String, Object> update = new LinkedHashMap<>(headers);
+        update.put(key, value);
+        headers = Collections.unmodifiableMap(update);
+        return this;
+    }
+
+    // Cookie 管理, 初始化 Cookie 管理器
+    private void initCookieManager() {
         if (isUseCookie() && null == CookieHandler.getDefault()) {
             cookieManager = new CookieManager();
             cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
@@ -657,8 +1848,8 @@ public class HTTP {
         // log.debug("{} {}", connectionMethod, connection.getURL()); // 日志
         connection.setRequestMethod(connectionMethod);
         if (METHOD_POST_VALUE.equalsIgnoreCase(connectionMethod) || METHOD_PUT_VALUE.equalsIgnoreCase(connectionMethod)) { // POST PUT 请求处理
-            String original = $getString(headers.get("Content-Type"));
-            if ($isEmptyString(original)) headers.put("Content-Type", contentType); // 设置 Content-Type
+            String original = $getString(connection.getRequestProperty("Content-Type"));
+            if ($isEmptyString(original)) connection.setRequestProperty("Content-Type", contentType); // 设置 Content-Type, 只作用于当前连接
 
             connection.setDoInput(true); // 可读
             connection.setDoOutput(true); // 可写
@@ -677,73 +1868,89 @@ public class HTTP {
     private void handleContentData(HttpURLConnection connection, boolean putByte, String content) throws IOException {
         if (null == connection || $isEmptyString(content)) return;
 
-        // 默认表单提交行为
-        if (!putByte) {
-            // log.debug("POST Stream: {}", content);
-            try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(), encoding)) {
+        // 压缩提交, 边编码边压缩, 分块传输, 不在内存中保留压缩后的完整内容
+        // 流式提交时 JDK 不保留请求体, 遇到 3xx 跳转或 401 认证不能重发, 开启跟随跳转时抛出 HttpRetryException
+        if (compressThreshold >= 0 && content.length() >= compressThreshold) {
+            // log.debug("POST Gzip: {}", content.length());
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setChunkedStreamingMode(0);
+            try (OutputStreamWriter out = new OutputStreamWriter(new GZIPOutputStream(connection.getOutputStream(), 8192), putByte ? Charset.defaultCharset().name() : encoding)) {
                 out.write(content);
             } catch (IOException e) {
                 e.printStackTrace();
                 throw e;
             }
+            return;
         }
 
-
-        // 默认字节流行为
-        if (putByte) {
-            // log.debug("POST Byte: {}", content);
-            try (DataOutputStream out = new DataOutputStream(connection.getOutputStream())) {
-                out.write(content.getBytes());
-            } catch (IOException e) {
-                e.printStackTrace();
-                throw e;
-            }
+        // 默认表单提交行为按 encoding 编码, 字节流行为按系统默认编码
+        // 不使用流式提交, 由 JDK 缓存请求体, 跟随跳转和认证时可以重发
+        // log.debug("POST {}: {}", putByte ? "Byte" : "Stream", content);
+        byte[] bytes = putByte ? content.getBytes() : content.getBytes(encoding);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw e;
         }
-
     }
 
     // 提交表单 / 默认携带上传文件的数据处理
+    // 先计算请求体长度, 文件都是普通文件时固定长度流式提交, 否则分块提交, JDK 不再把整个请求体缓存在内存中
+    // 流式提交不能重发请求体, 服务端返回 3xx 时不跟随跳转(开启跟随跳转时抛出 HttpRetryException), 返回 401 时不重试认证
     private void handleByteData(HttpURLConnection connection, Map<?, ?> formData, Map<String, String> fileData) throws IOException {
-        if (null == connection || $isEmptyCollection(formData) || $isEmptyCollection(fileData)) return;
+        if (null == connection || ($isEmptyCollection(formData) && $isEmptyCollection(fileData))) return;
 
         String boundary = String.format("------%s", System.currentTimeMillis());
         connection.setRequestProperty("Content-Type", String.format("multipart/form-data;boundary=%s", boundary));
 
-        try (DataOutputStream out = new DataOutputStream(connection.getOutputStream())) {
-            // FORM 字段
-            if (!$isEmptyCollection(formData)) {
-                // log.debug("POST Form: {}", formData);
-                String formParameterContent = formData.keySet().stream().filter(key -> null != formData.get(key))
-                        .map(key -> String.format("\r\n--%s\r\nContent-Disposition: form-data; name=\"%s\"\r\n\r\n%s", boundary, key, formData.get(key)))
-                        .reduce(String::concat).orElse($STRING_EMPTY_VALUE);
-
-                if ($isEmptyString(formParameterContent)) out.write(formParameterContent.getBytes(encoding)); // 写入
-            }
-
-            // 文件
-            if (!$isEmptyCollection(fileData)) {
-                // log.debug("POST File: {}", fileData);
-                for (String name : fileData.keySet()) {
-                    String path = $getString(fileData.get(name));
-                    if ($isEmptyString(path)) continue;
+        // FORM 字段
+        byte[] formBytes = new byte[0];
+        if (!$isEmptyCollection(formData)) {
+            // log.debug("POST Form: {}", formData);
+            String formParameterContent = formData.keySet().stream().filter(key -> null != formData.get(key))
+                    .map(key -> String.format("\r\n--%s\r\nContent-Disposition: form-data; name=\"%s\"\r\n\r\n%s", boundary, key, formData.get(key)))
+                    .reduce(String::concat).orElse($STRING_EMPTY_VALUE);
 
-                    File file = new File(path);
-                    if (!file.exists()) continue;
-
-                    String buffer = String.format("\r\n--%s\r\nContent-Disposition: form-data; name=\"%s\"; filename=\"%s\"\r\nContent-Type:application/octet-stream\r\n\r\n", boundary, name, file.getName());
-                    out.write(buffer.getBytes(encoding));
+            if (!$isEmptyString(formParameterContent)) formBytes = formParameterContent.getBytes(encoding);
+        }
 
-                    try (FileInputStream fis = new FileInputStream(file)) {
-                        byte[] cache = new byte[8192]; // 8k
-                        int count;
-                        while (-1 != (count = fis.read(cache))) out.write(cache, 0, count);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+        // 文件, 只计算分段头和文件长度, 内容在写出时读取
+        List<File> files = new ArrayList<>();
+        List<byte[]> fileHeads = new ArrayList<>();
+        if (!$isEmptyCollection(fileData)) {
+            // log.debug("POST File: {}", fileData);
+            for (String name : fileData.keySet()) {
+                String path = $getString(fileData.get(name));
+                if ($isEmptyString(path)) continue;
+
+                File file = new File(path);
+                if (!file.exists()) continue;
+
+                String buffer = String.format("\r\n--%s\r\nContent-Disposition: form-data; name=\"%s\"; filename=\"%s\"\r\nContent-Type:application/octet-stream\r\n\r\n", boundary, name, file.getName());
+                files.add(file);
+                fileHeads.add(buffer.getBytes(encoding));
             }
-
-            out.write(String.format("\r\n--%s--\r\n", boundary).getBytes(encoding));
+        }
+        byte[] endBytes = String.format("\r\n--%s--\r\n", boundary).getBytes(encoding);
+
+        // 请求体长度, 存在非普通文件(管道, 设备等)时长度未知
+        long length = formBytes.length + endBytes.length;
+        boolean fixedLength = true;
+        for (int i = 0; i < files.size(); i++) {
+            length += fileHeads.get(i).length + files.get(i).length();
+            if (!files.get(i).isFile()) fixedLength = false;
+        }
+        if (fixedLength) connection.setFixedLengthStreamingMode(length);
+        else connection.setChunkedStreamingMode(0);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(formBytes);
+            for (int i = 0; i < files.size(); i++) {
+                out.write(fileHeads.get(i));
+                $copyFile(files.get(i), out, $getBufferSize());
+            }
+            out.write(endBytes);
             out.flush();
         } catch (Exception e) {
             e.printStackTrace();
@@ -751,26 +1958,59 @@ public class HTTP {
         }
     }
 
-    // 处理结果
-    private String handleResult(HttpURLConnection connection) throws Exception {
-        if (null == connection) throw new Exception("Connection is Empty");
+    // 文件内容写入请求体, 缓冲区从缓冲区池获取
+    // HttpURLConnection 不暴露 Socket, 输出流之下无法使用 sendfile, 直接按字节数组复制
+    private static void $copyFile(File file, OutputStream out, int bufferSize) throws IOException {
+        byte[] cache = $BYTE_BUFFERS.acquire(bufferSize);
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int count;
+            while (-1 != (count = fis.read(cache))) out.write(cache, 0, count);
+        } finally {
+            $BYTE_BUFFERS.release(bufferSize, cache);
+        }
+    }
 
-        try (InputStream input = (connection.getResponseCode() < 400) ? connection.getInputStream() : connection.getErrorStream()) {
-            // Head 请求响应体
-            if (METHOD_HEAD_VALUE.equalsIgnoreCase(connection.getRequestMethod())) {
-                Map<String, List<String>> responseHeader = connection.getHeaderFields();
-                if ($isEmptyCollection(responseHeader)) return $STRING_EMPTY_VALUE;
-                return responseHeader.keySet().stream().map(key -> String.format("\r\n%s=%s", key, responseHeader.get(key))).reduce(String::concat).orElse($STRING_EMPTY_VALUE);
-            }
+    // 处理结果, handler 读取响应内容, 响应体读完后连接池模式下可复用连接
+    private <T> T handleResult(HttpURLConnection connection, ResponseHandler<T> handler) throws Exception {
+        if (null == connection) throw new Exception("Connection is Empty");
 
-            // 其他方法响应
-            return $parseString(input);
+        Response response = null;
+        try {
+            response = new Response(connection, encoding, decoders);
+            return handler.handle(response);
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
         } finally {
-            connection.disconnect(); // 释放连接
+            boolean reusable = null != response && response.close();
+            $releaseConnection(connection, reusable); // 释放连接
+        }
+    }
+
+    // 默认响应处理, 响应内容转为 String
+    private String $handleString(Response response) throws Exception {
+        // Head 请求响应体
+        if (METHOD_HEAD_VALUE.equalsIgnoreCase(response.getMethod())) {
+            Map<String, List<String>> responseHeader = response.getHeaders();
+            if ($isEmptyCollection(responseHeader)) return $STRING_EMPTY_VALUE;
+            return responseHeader.keySet().stream().map(key -> String.format("\r\n%s=%s", key, responseHeader.get(key))).reduce(String::concat).orElse($STRING_EMPTY_VALUE);
         }
+
+        // 其他方法响应
+        return $parseString(response.getInputStream());
+    }
+
+    // 释放连接, 连接池模式下已读完的连接交还 JDK Keep-Alive 缓存复用, 否则断开 Socket
+    private void $releaseConnection(HttpURLConnection connection, boolean reusable) {
+        if (null == connection) return;
+        boolean keep = null != pool && pool.release(connection, reusable);
+        if (!keep) connection.disconnect();
+    }
+
+    // 关闭客户端, 同时关闭连接池
+    @Override
+    public void close() {
+        if (null != pool) pool.close();
     }
 
     // 基础类型方法 ######################################################################################################################
@@ -834,29 +2074,123 @@ public class HTTP {
         return null != str && str.toString().trim().length() > 0;
     }
 
-    // 创建一个 年/月日的路径
+    // 创建一个 年/月日的路径, SimpleDateFormat 非线程安全, 复制后使用
     public static String createFolderPath() {
-        return FOLDER_FORMAT.format(new Date());
+        return ((SimpleDateFormat) FOLDER_FORMAT.clone()).format(new Date());
     }
 
     // 创建一个保存的文件名
     public static String createFileName() {
-        return String.format("%s_%s", FILE_FORMAT.format(new Date()), random.nextInt(999999));
+        return String.format("%s_%s", ((SimpleDateFormat) FILE_FORMAT.clone()).format(new Date()), random.nextInt(999999));
     }
 
     // 计算文件大小
-    private String $calcFileSize(int fileSize) {
+    private String $calcFileSize(long fileSize) {
         if (0 > fileSize) return "0Kb";
         if (fileSize > 1024f * 1024 * 1024) return String.format("%6.2fGb", fileSize / (1024f * 1024 * 1024));
         if (fileSize > 1024f * 1024) return String.format("%6.2fMb", fileSize / (1024f * 1024));
         return String.format("%6.2fKb", fileSize / 1024f);
     }
 
-    // 计算下载进度 current: 已写入总量, total: 文件大小总量
-    private String $calcPercent(int current, int total) {
-        double percent = current * 1.0 / total * 100.0;
-        return String.format("%6.2f%%", percent);
-    }
+    // 解析 HTTP 日期, 例如: Wed, 21 Oct 2015 07:28:00 GMT, 无法解析时为 -1
+    private static long $parseHttpDate(String date) {
+        if ($isEmptyString(date)) return -1;
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return format.parse(date.trim()).getTime();
+        } catch (java.text.ParseException e) {
+            return -1;
+        }
+    }
+
+    // 主机标识: 协议://主机:端口
+    private static String $getHostKey(URL url) {
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        return String.format("%s://%s:%s", url.getProtocol(), url.getHost().toLowerCase(), port);
+    }
+
+    // 默认异步执行器, 守护线程, 按需创建, 空闲 60 秒回收
+    private static volatile ExecutorService $defaultExecutor;
+
+    private static Executor $getDefaultExecutor() {
+        if (null == $defaultExecutor) {
+            synchronized (HTTP.class) {
+                if (null == $defaultExecutor) {
+                    AtomicInteger count = new AtomicInteger();
+                    $defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, String.format("HTTP-Async-%s", count.incrementAndGet()));
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return $defaultExecutor;
+    }
+
+    // 对冲请求执行器, JDK 21+ 使用虚拟线程, 否则使用不限数量的守护线程池
+    private static volatile ExecutorService $hedgeExecutor;
+
+    private static ExecutorService $getHedgeExecutor() {
+        if (null == $hedgeExecutor) {
+            synchronized (HTTP.class) {
+                if (null == $hedgeExecutor) {
+                    ExecutorService service = null;
+                    if (null != $VIRTUAL_EXECUTOR_METHOD) {
+                        try {
+                            service = (ExecutorService) $VIRTUAL_EXECUTOR_METHOD.invoke(null);
+                        } catch (ReflectiveOperationException ignored) {
+                        }
+                    }
+                    if (null == service) {
+                        AtomicInteger count = new AtomicInteger();
+                        service = Executors.newCachedThreadPool(runnable -> {
+                            Thread thread = new Thread(runnable, String.format("HTTP-Hedge-%s", count.incrementAndGet()));
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    }
+                    $hedgeExecutor = service;
+                }
+            }
+        }
+        return $hedgeExecutor;
+    }
+
+    // 延迟任务调度器, 守护线程, 只负责到时提交任务, 不执行请求
+    private static volatile ScheduledExecutorService $scheduler;
+
+    private static ScheduledExecutorService $getScheduler() {
+        if (null == $scheduler) {
+            synchronized (HTTP.class) {
+                if (null == $scheduler) {
+                    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, "HTTP-Scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler.setRemoveOnCancelPolicy(true);
+                    $scheduler = scheduler;
+                }
+            }
+        }
+        return $scheduler;
+    }
+
+    private static final long SEGMENT_MIN_SIZE = 1024 * 1024; // 分段下载每段最小长度
+    private static final int SEGMENT_BUFFER_SIZE = 64 * 1024; // 分段下载缓冲区最小长度
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)", Pattern.CASE_INSENSITIVE); // 206 响应的 Content-Range
+    private static final int BUFFER_MIN_SIZE = 1024; // 传输缓冲区最小长度
+    private static final long BUFFER_POOL_BYTES = 32 * 1024 * 1024; // 缓冲区池最多保留的总字节数, 不论缓冲区大小
+
+    // 传输缓冲区池, 所有 HTTP 实例共享
+    private static final BufferPool<byte[]> $BYTE_BUFFERS = new BufferPool<>(byte[]::new, 1);
+    private static final BufferPool<char[]> $CHAR_BUFFERS = new BufferPool<>(char[]::new, 2);
+
+    // 传输缓冲区大小
+    private int $getBufferSize() {
+        return Math.max(BUFFER_MIN_SIZE, bufferSize);
+    }
 
     // 创建父目录文件夹
     private static boolean $createFolder(String path) {
@@ -1050,16 +2384,33 @@ public class HTTP {
         return String.format("%s%s", action, query.toString());
     }
 
-    // 将 Input Stream 读去出来
+    // 将 Input Stream 全部读取为字节
+    private byte[] $readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int size = $getBufferSize();
+        byte[] cache = $BYTE_BUFFERS.acquire(size);
+        try {
+            int count;
+            while (-1 != (count = input.read(cache))) output.write(cache, 0, count);
+            return output.toByteArray();
+        } finally {
+            $BYTE_BUFFERS.release(size, cache);
+        }
+    }
+
+    // 将 Input Stream 读去出来, 按字符块读取, 保留原始换行
     private String $parseString(InputStream input) throws Exception {
         if (null == input) throw new Exception("InputStream is Empty");
 
         StringBuilder buffer = new StringBuilder();
-        try (InputStreamReader is = new InputStreamReader(input, encoding);
-             BufferedReader reader = new BufferedReader(is)) {
-            String line;
-            while (null != (line = reader.readLine())) buffer.append(line).append("\r\n");
+        int size = $getBufferSize();
+        char[] cache = $CHAR_BUFFERS.acquire(size);
+        try (InputStreamReader reader = new InputStreamReader(input, encoding)) {
+            int count;
+            while (-1 != (count = reader.read(cache))) buffer.append(cache, 0, count);
             return $getString(buffer.toString());
+        } finally {
+            $CHAR_BUFFERS.release(size, cache);
         }
     }
 
@@ -1175,8 +2526,10 @@ public class HTTP {
         return referer;
     }
 
+    // 设置后当前线程的下一个请求使用此来源, 其他线程没有上一个请求地址时使用
     public HTTP setReferer(String referer) {
         this.referer = referer;
+        previousUrl.remove();
         return this;
     }
 
@@ -1207,6 +2560,7 @@ public class HTTP {
         return this;
     }
 
+    // 只读快照, 修改请使用 addHeader
     public Map<String, Object> getHeaders() {
         return headers;
     }
@@ -1224,24 +2578,87 @@ public class HTTP {
         return null == cookieManager ? null : cookieManager.getCookieStore();
     }
 
-    public int getDownloadMinSize() {
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public HTTP setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+        return this;
+    }
+
+    public long getDownloadMinSize() {
         return downloadMinSize;
     }
 
-    public HTTP setDownloadMinSize(int downloadMinSize) {
+    public HTTP setDownloadMinSize(long downloadMinSize) {
         this.downloadMinSize = downloadMinSize;
         return this;
     }
 
-    public int getDownloadMaxSize() {
+    public long getDownloadMaxSize() {
         return downloadMaxSize;
     }
 
-    public HTTP setDownloadMaxSize(int downloadMaxSize) {
+    public HTTP setDownloadMaxSize(long downloadMaxSize) {
         this.downloadMaxSize = downloadMaxSize;
         return this;
     }
 
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public HTTP setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public boolean isDownloadResume() {
+        return downloadResume;
+    }
+
+    public HTTP setDownloadResume(boolean downloadResume) {
+        this.downloadResume = downloadResume;
+        return this;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    public HTTP setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    public HTTP setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    public long getProgressBytes() {
+        return progressBytes;
+    }
+
+    public HTTP setProgressBytes(long progressBytes) {
+        this.progressBytes = progressBytes;
+        return this;
+    }
+
+    public int getDownloadSegments() {
+        return downloadSegments;
+    }
+
+    public HTTP setDownloadSegments(int downloadSegments) {
+        this.downloadSegments = downloadSegments;
+        return this;
+    }
+
     public boolean isIgnoreHttps() {
         return ignoreHttps;
     }
@@ -1260,81 +2677,3382 @@ public class HTTP {
         return this;
     }
 
-    public static void main(String[] args) {
-        // 1. 全局支持链式调用: HTTP http = new HTTP().setIgnoreHttps(true).addHeader(key, value);
-        // 2. 设置地址栏参数, 默认提交表单拼接字符串等全部都有 Encoding
-        // 3. 像 get, post 为终止操作, 配置需要提前设置
-        // 4. 下载文件可解析 URL 获取文件名, 若获取后缀失败, 默认 .tmp 作为后缀
-        // 5. upload 操作上传参数默认值 file
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
 
-        // get 请求
-        // get(String url): GET 请求获取内容
-        // get(String uri, Object... kv): get请求地址栏后面增加 kv 的请求参数, 当 Map 使用就好, 必须键值对出现
-        // get(String uri, Map<?, ?> queryParameters): 跟上面方法相仿
+    // 自定义证书设置, 只作用于当前实例, 例如每个租户一个双向认证的 SSLContext
+    public HTTP setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
 
-        // delete 请求
-        // delete(String url): DELETE 请求
+    public HostnameVerifier getHostnameVerifier() {
+        return hostnameVerifier;
+    }
 
-        // header 请求
-        // header(String url): HEAD 请求, 获取头部响应体信息
+    public HTTP setHostnameVerifier(HostnameVerifier hostnameVerifier) {
+        this.hostnameVerifier = hostnameVerifier;
+        return this;
+    }
 
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
 
-        // options 请求
-        // options(String url): OPTIONS 请求, 一般用于跨域检查
+    public HTTP setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+        return this;
+    }
 
-        // request 方法
-        // request(String url, String method): 可自定义请求类型
+    public int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
 
-        // post 请求
-        // 1. post 方法均为简单的提交表单方式
-        // 2. post 也可以提交字节流, putByte = true, 既提交字节流
-        // 3. 所有方法参数均转为 String, 根据 putByte 是否转为字节流或者数据 提交到服务器
-        // 4. 默认编码方式 application/x- www-form-urlencoded
-        // 5. 可通过 new HTTP().setContentType(String contentType) 更改编码规则, 比如上传 application/json 等
+    public HTTP setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+        return this;
+    }
 
-        // post(String url, Object... kv)
-        // post(String url, boolean putByte, Object... kv)
-        // post(String url, Map<?, ?> formData)
-        // post(String url, boolean putByte, Map<?, ?> formData)
-        // post(String url, String content)
-        // post(String url, boolean putByte, String content)
+    public Pool getPool() {
+        return pool;
+    }
 
-        // postMultipart 默认文件上传方式
-        // 1. 使用场景, 需要提交表单和上传文件的, 可使用此方式
-        // 2. 默认编码方式: multipart/form-data;boundary, 可把上传的文件读取数据流到提交的流里
+    public HTTP setPool(Pool pool) {
+        this.pool = pool;
+        return this;
+    }
 
-        // postMultipart(String url, Object... kv)
-        // postMultipart(String url, Map<?, ?> postData)
-        // postMultipart(String url, Map<?, ?> postData, Map<String, String> postFile)
+    public boolean isHttp2() {
+        return http2;
+    }
 
-        // upload 方法
-        // 默认使用 postMultipart 方法提交文件
+    public HTTP setHttp2(boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
 
-        // upload(String url, String path): 上传单个文件, path 是文件路径, 默认参数 file
-        // upload(String url, String key, String path)
-        // upload(String url, Map<String, String> uploadFiles)
+    // 当前 JDK 是否支持 HTTP/2 传输
+    public static boolean isHttp2Supported() {
+        return null != Http2.INSTANCE;
+    }
 
-        // download 方法
-        // createFolderPath(): 外部使用方法, 可获取 年/月日 文件夹路径
-        // createFileName(): 外部使用方法, 可获取一个根据时间生成的文件名, 不带后缀名
+    public NioEngine getNioEngine() {
+        return nioEngine;
+    }
 
-        // download(String url, String realFolderPath): 下载到 realFolderPath 目录下, 默认创建时间分割目录, 文件名也按时间创建
-        // download(String url, String realFolderPath, boolean createFolder): 跟上面方法相仿, 可自定义是否创建 年/月日 的目录
-        // downloadByOriginal(String url, String realFolderPath, boolean createFolder): 跟上面方法相仿, 但文件名会根据url计算出来, 如果没有则按照时间创建
-        // download(String url, String realFolderPath, boolean createFolder, String fileBaseName, String fileSuffix, boolean autoFileName): 完整的自定义下载文件方法
-        // downloadFile(String url, String filePath): 下载一个文件到指定路径, filePath 是完整路径包括文件名后缀, 核心方法
+    public HTTP setNioEngine(NioEngine nioEngine) {
+        this.nioEngine = nioEngine;
+        return this;
+    }
 
-        // HTTPS 方法
-        // setIgnoreHttps(boolean ignoreHttps): 忽略所有 HTTPS, 既信任所有 HTTPS
-        // setSSL(String filePath, String password, String tlsType): 设置 SSL 证书
-        // setSSL(String filePath, String password): 设置 SSL 证书, 默认 TSLv1
+    public Executor getExecutor() {
+        return executor;
+    }
 
-        // Cookie 方法
-        // addCookie(String uri, String domain, String path, String key, String value)
-        // addCookie(String uri, HttpCookie... cookies)
-        // addCookie(URI uri, HttpCookie... cookies)
+    public HTTP setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
 
-        // Header 方法
-        // addHeader(String key, Object value)
+    public int getMaxAsyncPerHost() {
+        return maxAsyncPerHost;
+    }
+
+    public HTTP setMaxAsyncPerHost(int maxAsyncPerHost) {
+        this.maxAsyncPerHost = maxAsyncPerHost;
+        return this;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public HTTP setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public HTTP setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public HTTP setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public HTTP setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public HTTP setCache(Cache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public HTTP setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    // 累计被合并(没有发出请求, 直接共享结果)的请求数
+    public long getCoalescedCount() {
+        return flights.coalescedCount.get();
+    }
+
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    public HTTP setBatchThreads(int batchThreads) {
+        this.batchThreads = batchThreads;
+        return this;
+    }
+
+    // HTTP/2 传输 #####################################################################################################################
+    // 基于 JDK 11+ 的 java.net.http.HttpClient, 通过反射调用, 源码仍兼容 JDK 8, 低版本 JDK 上不可用
+    // 连接超时, 是否跳转, Cookie 相同的请求共用一个 HttpClient, 同一主机的并发请求在一个 HTTP/2 连接上多路复用
+    private static class Http2 {
+        private static final Http2 INSTANCE = $load(); // 低版本 JDK 为空
+        // HttpClient 不允许设置, 或 HTTP/2 禁止的 Header
+        private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+                "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning", "keep-alive", "proxy-connection", "te", "transfer-encoding"));
+
+        private final Method newClientBuilder, clientVersion, clientConnectTimeout, clientFollowRedirects, clientCookieHandler, clientSslContext, clientBuild;
+        private final Method newRequestBuilder, requestMethod, requestHeader, requestTimeout, requestBuild;
+        private final Method noBody, ofInputStream, bodyHandler, sendAsync;
+        private final Method statusCode, headers, headersMap, body;
+        private final Class<?> timeoutException;
+        private final Object version, redirectNormal, redirectNever;
+        private static final int MAX_CLIENTS = 16; // 最多保留的 HttpClient 数量, 超出时丢弃最久未使用的, 丢弃的连接由 GC 回收
+        // 配置 => HttpClient, 按访问顺序排列, 读写都在 synchronized 中
+        private final Map<ClientKey, Object> clients = new LinkedHashMap<ClientKey, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ClientKey, Object> eldest) {
+                return size() > MAX_CLIENTS;
+            }
+        };
+
+        private static Http2 $load() {
+            try {
+                return new Http2();
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        private Http2() throws ReflectiveOperationException {
+            Class<?> client = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+            Class<?> request = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> publisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> publishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> response = Class.forName("java.net.http.HttpResponse");
+            Class<?> handler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> handlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+
+            newClientBuilder = client.getMethod("newBuilder");
+            clientVersion = clientBuilderClass.getMethod("version", versionClass);
+            clientConnectTimeout = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+            clientFollowRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+            clientCookieHandler = clientBuilderClass.getMethod("cookieHandler", CookieHandler.class);
+            clientSslContext = clientBuilderClass.getMethod("sslContext", SSLContext.class);
+            clientBuild = clientBuilderClass.getMethod("build");
+            newRequestBuilder = request.getMethod("newBuilder", URI.class);
+            requestMethod = requestBuilderClass.getMethod("method", String.class, publisher);
+            requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+            requestTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+            requestBuild = requestBuilderClass.getMethod("build");
+            noBody = publishers.getMethod("noBody");
+            ofInputStream = publishers.getMethod("ofInputStream", Supplier.class);
+            bodyHandler = handlers.getMethod("ofInputStream");
+            sendAsync = client.getMethod("sendAsync", request, handler);
+            statusCode = response.getMethod("statusCode");
+            headers = response.getMethod("headers");
+            headersMap = httpHeaders.getMethod("map");
+            body = response.getMethod("body");
+            timeoutException = Class.forName("java.net.http.HttpTimeoutException");
+            version = $enum(versionClass, "HTTP_2");
+            redirectNormal = $enum(redirectClass, "NORMAL");
+            redirectNever = $enum(redirectClass, "NEVER");
+        }
+
+        private static Object $enum(Class<?> type, String name) throws ReflectiveOperationException {
+            for (Object constant : type.getEnumConstants()) if (((Enum<?>) constant).name().equals(name)) return constant;
+            throw new NoSuchFieldException(name);
+        }
+
+        // 获取 HttpClient, 相同配置共用一个
+        // HttpClient 不支持自定义主机名校验, 设置了主机名校验或忽略 HTTPS 验证的请求不使用 HTTP/2, 见 $isHttp2Connection
+        private Object client(int connectTimeout, boolean followRedirects, CookieHandler cookieHandler, SSLContext sslContext) throws ReflectiveOperationException {
+            ClientKey key = new ClientKey(connectTimeout, followRedirects, cookieHandler, sslContext);
+            synchronized (clients) {
+                Object client = clients.get(key);
+                if (null != client) return client;
+                Object builder = newClientBuilder.invoke(null);
+                clientVersion.invoke(builder, version);
+                if (connectTimeout > 0) clientConnectTimeout.invoke(builder, Duration.ofMillis(connectTimeout));
+                clientFollowRedirects.invoke(builder, followRedirects ? redirectNormal : redirectNever);
+                if (null != cookieHandler) clientCookieHandler.invoke(builder, cookieHandler);
+                if (null != sslContext) clientSslContext.invoke(builder, sslContext);
+                client = clientBuild.invoke(builder);
+                clients.put(key, client);
+                return client;
+            }
+        }
+
+        // HttpClient 的配置, Cookie 和证书按对象本身比较, 不同的对象不会共用 HttpClient
+        private static class ClientKey {
+            private final int connectTimeout;
+            private final boolean followRedirects;
+            private final CookieHandler cookieHandler;
+            private final SSLContext sslContext;
+
+            private ClientKey(int connectTimeout, boolean followRedirects, CookieHandler cookieHandler, SSLContext sslContext) {
+                this.connectTimeout = connectTimeout;
+                this.followRedirects = followRedirects;
+                this.cookieHandler = cookieHandler;
+                this.sslContext = sslContext;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof ClientKey)) return false;
+                ClientKey other = (ClientKey) o;
+                return connectTimeout == other.connectTimeout && followRedirects == other.followRedirects && cookieHandler == other.cookieHandler && sslContext == other.sslContext;
+            }
+
+            @Override
+            public int hashCode() {
+                return ((connectTimeout * 31 + (followRedirects ? 1 : 0)) * 31 + System.identityHashCode(cookieHandler)) * 31 + System.identityHashCode(sslContext);
+            }
+        }
+
+        // 转换 HttpClient 的错误, 超时转为 SocketTimeoutException, 与 HttpURLConnection 一致
+        private IOException $ioException(Throwable cause) {
+            if (timeoutException.isInstance(cause)) {
+                SocketTimeoutException e = new SocketTimeoutException(cause.getMessage());
+                e.initCause(cause);
+                return e;
+            }
+            return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    // 以 HttpURLConnection 的方式使用 HttpClient, 现有的提交, 响应, 下载流程不需要修改
+    // 请求在第一次读取响应或写入请求体时发出, 请求体通过管道边写边发送, 响应体以流的方式读取
+    // 读取超时按 连接超时 + 读取超时 作为收到响应头的超时时间, 断开连接只取消本次请求, 不关闭共享的 HTTP/2 连接
+    private static class Http2Connection extends HttpURLConnection {
+        private final Http2 http2;
+        private final CookieHandler cookieHandler;
+        private final SSLContext sslContext; // 为空时使用 JDK 默认
+        private Pipe pipe; // 请求体
+        private CompletableFuture<?> future; // 发送中的请求
+        private volatile boolean received = false; // 是否已收到响应头
+        private Map<String, List<String>> responseHeaders = Collections.emptyMap();
+        private List<Map.Entry<String, String>> headerList; // 按顺序排列的响应头, 按序号读取时使用
+        private InputStream body; // 响应体
+
+        private Http2Connection(URL url, Http2 http2, CookieHandler cookieHandler, SSLContext sslContext) {
+            super(url);
+            this.http2 = http2;
+            this.cookieHandler = cookieHandler;
+            this.sslContext = sslContext;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            send(null);
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void disconnect() {
+            if (null != future) future.cancel(true);
+            if (null != pipe) pipe.abort();
+            if (null != body) {
+                try {
+                    body.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (null == pipe) {
+                if (null != future) throw new ProtocolException("Cannot Write Output After Request Sent");
+                pipe = new Pipe();
+                send(pipe);
+            }
+            return pipe.output;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            receive();
+            return responseCode;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            receive();
+            if (responseCode >= 400) throw new IOException(String.format("Server returned HTTP response code: %s for URL: %s", responseCode, url));
+            return body;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return received && responseCode >= 400 ? body : null;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            if (!$receiveQuietly() || null == name) return null;
+            List<String> values = responseHeaders.get(name);
+            return null == values || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return $receiveQuietly() ? responseHeaders : Collections.emptyMap();
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n) {
+            return $receiveQuietly() && n >= 0 && n < headerList.size() ? headerList.get(n).getKey() : null;
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            return $receiveQuietly() && n >= 0 && n < headerList.size() ? headerList.get(n).getValue() : null;
+        }
+
+        // 发出请求, 只发一次
+        private synchronized void send(Pipe pipe) throws IOException {
+            if (null != future) return;
+            try {
+                Map<String, List<String>> properties = getRequestProperties(); // 连接后不能再读取
+                connected = true;
+                Object builder = http2.newRequestBuilder.invoke(null, url.toURI());
+                for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
+                    if (null == entry.getKey() || Http2.RESTRICTED_HEADERS.contains(entry.getKey().toLowerCase())) continue;
+                    for (String value : entry.getValue()) http2.requestHeader.invoke(builder, entry.getKey(), value);
+                }
+                if (getReadTimeout() > 0) http2.requestTimeout.invoke(builder, Duration.ofMillis((long) getConnectTimeout() + getReadTimeout()));
+                Supplier<InputStream> supplier = null == pipe ? null : () -> pipe.input;
+                Object publisher = null == pipe ? http2.noBody.invoke(null) : http2.ofInputStream.invoke(null, supplier);
+                http2.requestMethod.invoke(builder, getRequestMethod(), publisher);
+
+                Object client = http2.client(getConnectTimeout(), getInstanceFollowRedirects(), cookieHandler, sslContext);
+                future = (CompletableFuture<?>) http2.sendAsync.invoke(client, http2.requestBuild.invoke(builder), http2.bodyHandler.invoke(null));
+                if (null != pipe) future.whenComplete((response, e) -> {
+                    if (null != e) pipe.abort(); // 请求失败, 写入请求体的线程不再等待
+                });
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            } catch (ReflectiveOperationException e) {
+                throw http2.$ioException(null == e.getCause() ? e : e.getCause());
+            }
+        }
+
+        // 等待响应头
+        private synchronized void receive() throws IOException {
+            if (received) return;
+            if (null == future) send(null);
+            if (null != pipe) pipe.output.close(); // 请求体写完
+            try {
+                Object response = future.get();
+                responseCode = (int) http2.statusCode.invoke(response);
+                responseHeaders = (Map<String, List<String>>) http2.headersMap.invoke(http2.headers.invoke(response));
+                body = (InputStream) http2.body.invoke(response);
+                headerList = new ArrayList<>();
+                responseHeaders.forEach((key, values) -> values.forEach(value -> headerList.add(new AbstractMap.SimpleImmutableEntry<>(key, value))));
+                received = true;
+            } catch (ExecutionException e) {
+                throw http2.$ioException(e.getCause());
+            } catch (CancellationException e) {
+                throw new IOException("Request Cancelled");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Request Interrupted");
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private boolean $receiveQuietly() {
+            try {
+                receive();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    // 请求体管道, 调用线程写入, HttpClient 读取, 队列满时写入等待, 请求失败或取消时两端都不再等待
+    private static class Pipe {
+        private static final byte[] EOF = new byte[0];
+        private static final int CAPACITY = 16; // 队列中最多的数据块
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CAPACITY);
+        private volatile boolean aborted = false;
+
+        private final OutputStream output = new OutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (closed) throw new IOException("Stream Closed");
+                if (len > 0) put(Arrays.copyOfRange(b, off, off + len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                put(EOF);
+            }
+        };
+
+        private final InputStream input = new InputStream() {
+            private byte[] chunk; // 当前数据块
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return -1 == read(one, 0, 1) ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (0 == len) return 0;
+                if (EOF == chunk) return -1;
+                if (null == chunk || position == chunk.length) {
+                    chunk = take();
+                    position = 0;
+                    if (EOF == chunk) return -1;
+                }
+                int count = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, count);
+                position += count;
+                return count;
+            }
+        };
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS))
+                    if (aborted) throw new IOException("Request Aborted");
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Request Interrupted");
+            }
+            if (aborted) throw new IOException("Request Aborted");
+        }
+
+        private byte[] take() throws IOException {
+            try {
+                byte[] chunk;
+                while (null == (chunk = queue.poll(100, TimeUnit.MILLISECONDS)))
+                    if (aborted) throw new IOException("Request Aborted");
+                return chunk;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Request Interrupted");
+            }
+        }
+
+        private void abort() {
+            aborted = true;
+            queue.clear();
+        }
+    }
+
+    // 请求合并 ########################################################################################################################
+    // 相同标识的请求执行中时, 后来的调用等待并共享第一个请求的结果或错误, 不再发出请求, 请求完成后移除, 之后的调用重新请求
+    private static class SingleFlight {
+        private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>(); // 执行中的请求
+        private final AtomicLong coalescedCount = new AtomicLong(); // 累计被合并的请求数
+
+        private <T> T execute(String key, Callable<T> call) throws Exception {
+            CompletableFuture<Object> created = new CompletableFuture<>();
+            CompletableFuture<Object> existing = calls.putIfAbsent(key, created);
+            if (null != existing) {
+                coalescedCount.incrementAndGet();
+                try {
+                    return (T) existing.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+
+            try {
+                T result = call.call();
+                created.complete(result);
+                return result;
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                calls.remove(key, created);
+            }
+        }
+    }
+
+    // 响应缓存 ########################################################################################################################
+    // 缓存 get 请求的 200 响应, 按 Cache-Control: max-age / Expires 计算有效期, no-store 不缓存, no-cache 每次重新验证
+    // 没有有效期但有 ETag / Last-Modified 的响应也缓存, 每次使用前重新验证, 304 响应不传输内容
+    // 内存按 LRU 淘汰, 总大小不超过 maxSize; 设置 directory 后同时写入磁盘, 内存淘汰或重启后从磁盘读取, 磁盘超过 maxDiskSize 时删除最旧的文件
+    // Cache-Control: private 的响应不缓存, 多个 HTTP 可共享同一个 Cache
+    // 缓存按 方法 + 地址 + 影响响应的配置 区分, 带 Authorization / Cookie 的请求不使用缓存, Vary 包含其他请求头的响应不缓存
+    public static class Cache {
+        private long maxSize = 16 * 1024 * 1024; // 内存缓存总大小
+        private long maxEntrySize = 1024 * 1024; // 单个响应最大缓存大小, 超过的不缓存
+        private File directory; // 磁盘缓存目录, 为空时只缓存在内存
+        private long maxDiskSize = 256 * 1024 * 1024; // 磁盘缓存总大小
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // 内存缓存, 按访问顺序排列
+        private long size = 0; // 内存缓存当前大小
+        private final AtomicLong diskSize = new AtomicLong(-1); // 磁盘缓存当前大小, 第一次使用时统计
+
+        private final AtomicLong hitCount = new AtomicLong(); // 累计命中次数
+        private final AtomicLong missCount = new AtomicLong(); // 累计未命中次数
+        private final AtomicLong revalidateCount = new AtomicLong(); // 累计 304 重新验证次数
+
+        // 读取缓存, 内存没有时读取磁盘
+        Entry get(String key) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (null != entry) return entry;
+            }
+            Entry entry = readDisk(key);
+            if (null != entry) putMemory(entry);
+            return entry;
+        }
+
+        // 写入缓存
+        void put(String key, Entry entry) {
+            if (entry.body.length > maxEntrySize) return;
+            putMemory(entry);
+            writeDisk(entry);
+        }
+
+        private synchronized void putMemory(Entry entry) {
+            Entry old = entries.put(entry.key, entry);
+            if (null != old) size -= old.body.length;
+            size += entry.body.length;
+            // LRU 淘汰
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+
+        // 删除地址的所有缓存
+        public void remove(String url) {
+            synchronized (this) {
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (!entry.url.equals(url)) continue;
+                    size -= entry.body.length;
+                    iterator.remove();
+                }
+            }
+            String prefix = $digest(url);
+            File[] files = null == directory || null == prefix ? null : directory.listFiles((dir, name) -> name.startsWith(prefix));
+            if (null != files) for (File file : files) $deleteDisk(file);
+        }
+
+        // 删除单个缓存
+        void removeKey(String key) {
+            synchronized (this) {
+                Entry old = entries.remove(key);
+                if (null != old) size -= old.body.length;
+            }
+            $deleteDisk(diskFile(key, $urlOf(key)));
+        }
+
+        private void $deleteDisk(File file) {
+            if (null == file || !file.exists()) return;
+            long length = file.length();
+            if (file.delete() && diskSize.get() >= 0) diskSize.addAndGet(-length);
+        }
+
+        // 清空内存缓存, 磁盘缓存保留
+        public synchronized void clear() {
+            entries.clear();
+            size = 0;
+        }
+
+        // 磁盘缓存文件, 文件名为 url 和缓存标识的 SHA-256 前半部分, 按 url 前缀可删除同一地址的所有缓存
+        private File diskFile(String key, String url) {
+            String urlDigest = $digest(url);
+            String keyDigest = $digest(key);
+            if (null == directory || null == urlDigest || null == keyDigest) return null;
+            return new File(directory, String.format("%s-%s.cache", urlDigest, keyDigest));
+        }
+
+        private static String $digest(String value) {
+            try {
+                return $sha256(value).substring(0, 32);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        // 缓存标识以 "GET url" 开头, 取出 url
+        private static String $urlOf(String key) {
+            int end = key.indexOf('\n');
+            return key.substring(key.indexOf(' ') + 1, end < 0 ? key.length() : end);
+        }
+
+        private Entry readDisk(String key) {
+            File file = diskFile(key, $urlOf(key));
+            if (null == file || !file.exists()) return null;
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                Entry entry = Entry.read(input);
+                return key.equals(entry.key) ? entry : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        // 写入磁盘, 先写临时文件再重命名, 读取时不会读到写了一半的文件
+        private void writeDisk(Entry entry) {
+            File file = diskFile(entry.key, entry.url);
+            if (null == file) return;
+            try {
+                if (!directory.exists() && !directory.mkdirs()) return;
+                if (diskSize.get() < 0) diskSize.compareAndSet(-1, $directorySize(directory));
+                File temp = new File(directory, String.format("%s.%s.tmp", file.getName(), Thread.currentThread().getId()));
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    entry.write(output);
+                }
+                long old = file.exists() ? file.length() : 0;
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (diskSize.addAndGet(file.length() - old) > maxDiskSize) trimDisk();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // 磁盘超过上限时, 按修改时间从旧到新删除, 直到低于上限
+        private synchronized void trimDisk() {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".cache"));
+            if (null == files) return;
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (diskSize.get() <= maxDiskSize) break;
+                long length = file.length();
+                if (file.delete()) diskSize.addAndGet(-length);
+            }
+        }
+
+        private static long $directorySize(File directory) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".cache"));
+            long total = 0;
+            if (null != files) for (File file : files) total += file.length();
+            return total;
+        }
+
+        // 响应的缓存有效期(毫秒), 0 表示缓存但每次重新验证, < 0 不缓存
+        private static long $maxAge(Response response) {
+            boolean validator = !$isEmptyString(response.getHeader("ETag")) || !$isEmptyString(response.getHeader("Last-Modified"));
+            String control = $getString(response.getHeader("Cache-Control")).toLowerCase();
+            long maxAge = -1;
+            for (String directive : control.split(",")) {
+                directive = directive.trim();
+                if ("no-store".equals(directive) || "private".equals(directive) || directive.startsWith("private=")) return -1; // 共享缓存不保存私有响应
+                if ("no-cache".equals(directive)) return validator ? 0 : -1;
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Math.max(0, Long.parseLong(directive.substring(8).trim()) * 1000);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+            if (maxAge < 0) {
+                long expires = $parseHttpDate(response.getHeader("Expires"));
+                if (expires >= 0) {
+                    long date = $parseHttpDate(response.getHeader("Date"));
+                    maxAge = Math.max(0, expires - (date < 0 ? System.currentTimeMillis() : date));
+                }
+            }
+            if (maxAge < 0 && validator) maxAge = 0;
+            return 0 == maxAge && !validator ? -1 : maxAge; // 立即过期又无法验证的响应缓存没有意义
+        }
+
+        // 累计命中次数, 新鲜的缓存直接返回
+        public long getHitCount() {
+            return hitCount.get();
+        }
+
+        // 累计未命中次数, 包括缓存内容已变化的重新验证
+        public long getMissCount() {
+            return missCount.get();
+        }
+
+        // 累计 304 重新验证次数
+        public long getRevalidateCount() {
+            return revalidateCount.get();
+        }
+
+        public synchronized long getSize() {
+            return size;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public Cache setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public long getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public Cache setMaxEntrySize(long maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+            return this;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public Cache setDirectory(String directory) {
+            this.directory = $isEmptyString(directory) ? null : new File(directory);
+            return this;
+        }
+
+        public long getMaxDiskSize() {
+            return maxDiskSize;
+        }
+
+        public Cache setMaxDiskSize(long maxDiskSize) {
+            this.maxDiskSize = maxDiskSize;
+            return this;
+        }
+
+        // 缓存的响应
+        private static class Entry {
+            private final String key; // 缓存标识
+            private final String url;
+            private final byte[] body; // 响应内容, 已解压
+            private final String etag;
+            private final String lastModified;
+            private final long expiresAt; // 过期时间
+
+            private Entry(String key, String url, byte[] body, String etag, String lastModified, long expiresAt) {
+                this.key = key;
+                this.url = url;
+                this.body = body;
+                this.etag = etag;
+                this.lastModified = lastModified;
+                this.expiresAt = expiresAt;
+            }
+
+            private boolean isFresh() {
+                return System.currentTimeMillis() < expiresAt;
+            }
+
+            // 304 响应后更新有效期, 校验标识以新响应为准
+            private Entry refresh(long maxAge, Response response) {
+                String newEtag = $getString(response.getHeader("ETag"), etag);
+                String newLastModified = $getString(response.getHeader("Last-Modified"), lastModified);
+                return new Entry(key, url, body, newEtag, newLastModified, System.currentTimeMillis() + Math.max(0, maxAge));
+            }
+
+            private void write(DataOutputStream output) throws IOException {
+                output.writeUTF(key);
+                output.writeUTF(url);
+                output.writeUTF($getString(etag));
+                output.writeUTF($getString(lastModified));
+                output.writeLong(expiresAt);
+                output.writeInt(body.length);
+                output.write(body);
+            }
+
+            private static Entry read(DataInputStream input) throws IOException {
+                String key = input.readUTF();
+                String url = input.readUTF();
+                String etag = input.readUTF();
+                String lastModified = input.readUTF();
+                long expiresAt = input.readLong();
+                byte[] body = new byte[input.readInt()];
+                input.readFully(body);
+                return new Entry(key, url, body, etag, lastModified, expiresAt);
+            }
+        }
+    }
+
+    // 对冲策略 ########################################################################################################################
+    // GET / HEAD / OPTIONS 请求在延迟时间内没有收到响应头时, 再发出相同的请求, 先响应的胜出, 适合多副本的后端, 降低尾部延迟
+    // 延迟时间为最近 SAMPLE_SIZE 个请求耗时的百分位数, 样本不足时使用 initialDelay
+    // 多个 HTTP 可共享同一个 HedgePolicy, 共享耗时统计
+    public static class HedgePolicy {
+        private static final int SAMPLE_SIZE = 1000; // 耗时样本数
+        private static final int MIN_SAMPLES = 20; // 样本达到此数量才按百分位数计算延迟
+
+        private double percentile = 0.95; // 延迟时间取耗时的百分位数
+        private long initialDelay = 100; // 样本不足时的延迟时间(毫秒)
+        private long minDelay = 10; // 最小延迟时间(毫秒), 避免对冲过于频繁
+        private int maxHedges = 1; // 每个请求最多额外发出的请求数
+
+        private final long[] samples = new long[SAMPLE_SIZE]; // 最近的请求耗时(纳秒), 环形记录
+        private int count = 0; // 已记录的样本数
+        private long cachedDelay = -1; // 缓存的延迟时间, 每记录 100 个样本重新计算
+        private final AtomicLong hedgedCount = new AtomicLong(); // 累计额外发出的请求数
+        private final AtomicLong hedgeWins = new AtomicLong(); // 累计额外请求胜出的次数
+
+        // 方法是否可对冲
+        boolean isHedgeable(String method) {
+            return METHOD_GET_VALUE.equals(method) || METHOD_HEAD_VALUE.equals(method) || METHOD_OPTIONS_VALUE.equals(method);
+        }
+
+        // 对冲延迟时间(毫秒)
+        synchronized long delay() {
+            if (count < MIN_SAMPLES) return Math.max(minDelay, initialDelay);
+            if (cachedDelay < 0) {
+                long[] sorted = Arrays.copyOf(samples, Math.min(count, SAMPLE_SIZE));
+                Arrays.sort(sorted);
+                int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(percentile * sorted.length) - 1));
+                cachedDelay = TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+            }
+            return Math.max(minDelay, cachedDelay);
+        }
+
+        // 记录请求耗时, hedged 表示额外请求胜出
+        synchronized void record(long nanos, boolean hedged) {
+            samples[count % SAMPLE_SIZE] = nanos;
+            if (++count % 100 == 0 || count <= MIN_SAMPLES) cachedDelay = -1;
+            if (hedged) hedgeWins.incrementAndGet();
+        }
+
+        // 累计额外发出的请求数
+        public long getHedgedCount() {
+            return hedgedCount.get();
+        }
+
+        // 累计额外请求胜出的次数
+        public long getHedgeWins() {
+            return hedgeWins.get();
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public HedgePolicy setPercentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        public long getInitialDelay() {
+            return initialDelay;
+        }
+
+        public HedgePolicy setInitialDelay(long initialDelay) {
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        public long getMinDelay() {
+            return minDelay;
+        }
+
+        public HedgePolicy setMinDelay(long minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        public int getMaxHedges() {
+            return maxHedges;
+        }
+
+        public HedgePolicy setMaxHedges(int maxHedges) {
+            this.maxHedges = maxHedges;
+            return this;
+        }
+    }
+
+    // 熔断器 ##########################################################################################################################
+    // 按主机统计最近一段时间(滚动窗口)的失败率和慢请求比例, 超过阈值后熔断, 熔断期间该主机的请求直接抛出 CircuitOpenException, 不占用线程等待超时
+    // 熔断时间结束后进入半开状态, 放行少量探测请求, 探测成功恢复, 失败继续熔断
+    // 失败: 网络错误, 超时, 5xx 响应; 慢请求: 从发起请求到收到响应头的时间超过 slowCallThreshold
+    // 多个 HTTP 可共享同一个 CircuitBreaker
+    public static class CircuitBreaker {
+        public enum State {CLOSED, OPEN, HALF_OPEN}
+
+        private long windowSize = 10 * 1000; // 滚动窗口时间(毫秒), 分为 10 个时间片, 只影响新建的主机记录
+        private int minimumCalls = 20; // 窗口内请求数达到此数量才计算比例
+        private double failureRateThreshold = 0.5; // 失败率阈值
+        private long slowCallThreshold = 5 * 1000; // 慢请求时间(毫秒)
+        private double slowRateThreshold = 0.8; // 慢请求比例阈值, > 1 不按慢请求熔断
+        private long openTimeout = 10 * 1000; // 熔断时间(毫秒), 之后进入半开状态
+        private int halfOpenCalls = 1; // 半开状态放行的探测请求数, 全部成功后恢复
+
+        private final Map<String, Circuit> circuits = new ConcurrentHashMap<>(); // 主机记录
+        private final AtomicLong rejectedCount = new AtomicLong(); // 累计熔断拒绝的请求数
+
+        // 获取主机的通行许可, 熔断中抛出 CircuitOpenException
+        Circuit acquire(String host) throws CircuitOpenException {
+            Circuit circuit = circuits.computeIfAbsent(host, key -> new Circuit(key, windowSize));
+            long wait = circuit.tryAcquire();
+            if (wait < 0) return circuit;
+            rejectedCount.incrementAndGet();
+            throw new CircuitOpenException(host, wait);
+        }
+
+        // 响应码是否算作失败
+        boolean isFailure(int code) {
+            return code >= 500;
+        }
+
+        // 主机当前的熔断状态
+        public State getState(String url) throws Exception {
+            Circuit circuit = circuits.get($getHostKey(new URL(url)));
+            return null == circuit ? State.CLOSED : circuit.getState();
+        }
+
+        // 手动恢复所有主机
+        public void reset() {
+            circuits.clear();
+        }
+
+        // 累计熔断拒绝的请求数
+        public long getRejectedCount() {
+            return rejectedCount.get();
+        }
+
+        public long getWindowSize() {
+            return windowSize;
+        }
+
+        public CircuitBreaker setWindowSize(long windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public CircuitBreaker setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public CircuitBreaker setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public long getSlowCallThreshold() {
+            return slowCallThreshold;
+        }
+
+        public CircuitBreaker setSlowCallThreshold(long slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+            return this;
+        }
+
+        public double getSlowRateThreshold() {
+            return slowRateThreshold;
+        }
+
+        public CircuitBreaker setSlowRateThreshold(double slowRateThreshold) {
+            this.slowRateThreshold = slowRateThreshold;
+            return this;
+        }
+
+        public long getOpenTimeout() {
+            return openTimeout;
+        }
+
+        public CircuitBreaker setOpenTimeout(long openTimeout) {
+            this.openTimeout = openTimeout;
+            return this;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public CircuitBreaker setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        // 单个主机的熔断状态
+        private class Circuit {
+            private static final int SLOTS = 10; // 窗口时间片数
+
+            private final String host;
+            private final long slotMillis; // 每个时间片的时间
+            private final long[] slotIndex = new long[SLOTS]; // 时间片编号
+            private final int[] calls = new int[SLOTS]; // 请求数
+            private final int[] failures = new int[SLOTS]; // 失败数
+            private final int[] slows = new int[SLOTS]; // 慢请求数
+
+            private State state = State.CLOSED;
+            private long openedAt; // 熔断开始时间
+            private int probes; // 半开状态已放行的探测请求数
+            private int successes; // 半开状态探测成功数
+
+            private Circuit(String host, long windowSize) {
+                this.host = host;
+                this.slotMillis = Math.max(1, windowSize / SLOTS);
+                Arrays.fill(slotIndex, -1);
+            }
+
+            // 尝试通行, 返回 -1 表示放行, 否则为熔断剩余时间(毫秒)
+            private synchronized long tryAcquire() {
+                long now = System.currentTimeMillis();
+                if (State.OPEN == state) {
+                    long remain = openedAt + openTimeout - now;
+                    if (remain > 0) return remain;
+                    state = State.HALF_OPEN;
+                    probes = 0;
+                    successes = 0;
+                    // log.debug("Circuit Half Open [{}]", host);
+                }
+                if (State.HALF_OPEN == state) {
+                    if (probes >= Math.max(1, halfOpenCalls)) return 0;
+                    probes++;
+                }
+                return -1;
+            }
+
+            // 记录一次请求结果
+            synchronized void record(boolean failure, long latencyNanos) {
+                boolean slow = TimeUnit.NANOSECONDS.toMillis(latencyNanos) > slowCallThreshold;
+                if (State.HALF_OPEN == state) {
+                    if (failure || slow) open();
+                    else if (++successes >= Math.max(1, halfOpenCalls)) close();
+                    return;
+                }
+                if (State.OPEN == state) return;
+
+                int i = slot(System.currentTimeMillis());
+                calls[i]++;
+                if (failure) failures[i]++;
+                if (slow) slows[i]++;
+
+                long now = System.currentTimeMillis() / slotMillis;
+                int total = 0, failed = 0, slowed = 0;
+                for (int j = 0; j < SLOTS; j++) {
+                    if (now - slotIndex[j] >= SLOTS) continue; // 窗口外的时间片
+                    total += calls[j];
+                    failed += failures[j];
+                    slowed += slows[j];
+                }
+                if (total < minimumCalls) return;
+                if ((double) failed / total >= failureRateThreshold || (double) slowed / total >= slowRateThreshold) open();
+            }
+
+            // 归还半开状态的探测名额, 请求在发出之前失败时调用
+            synchronized void release() {
+                if (State.HALF_OPEN == state && probes > 0) probes--;
+            }
+
+            private synchronized State getState() {
+                return state;
+            }
+
+            // 当前时间片, 过期的时间片清零复用
+            private int slot(long now) {
+                long index = now / slotMillis;
+                int i = (int) (index % SLOTS);
+                if (slotIndex[i] != index) {
+                    slotIndex[i] = index;
+                    calls[i] = 0;
+                    failures[i] = 0;
+                    slows[i] = 0;
+                }
+                return i;
+            }
+
+            private void open() {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                // log.debug("Circuit Open [{}]", host);
+            }
+
+            private void close() {
+                state = State.CLOSED;
+                Arrays.fill(slotIndex, -1);
+                // log.debug("Circuit Closed [{}]", host);
+            }
+        }
+    }
+
+    // 主机熔断中, 请求未发出
+    public static class CircuitOpenException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final String host; // 主机标识
+        private final long retryAfter; // 熔断剩余时间(毫秒), 半开状态探测中为 0
+
+        public CircuitOpenException(String host, long retryAfter) {
+            super(String.format("Circuit Open [%s], Retry After [%s]ms", host, retryAfter));
+            this.host = host;
+            this.retryAfter = retryAfter;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    // 重试策略 ########################################################################################################################
+    // 重试连接失败, 超时, 连接重置, 以及指定的响应码(默认 429 / 503), 有 Retry-After 时按其等待, 否则指数退避加随机抖动
+    // 默认只重试幂等方法, 重试额度按请求数的比例积累, 上游持续失败时额度耗尽, 不再重试, 避免重试风暴
+    // 多个 HTTP 可共享同一个 RetryPolicy, 共享重试额度
+    public static class RetryPolicy {
+        private int maxRetries = 3; // 单个请求最多重试次数
+        private long baseDelay = 100; // 第一次重试的退避时间(毫秒), 之后每次翻倍
+        private long maxDelay = 10 * 1000; // 最大退避时间(毫秒), Retry-After 超过此时间时不再重试
+        private Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(429, 503)); // 需要重试的响应码
+        private boolean retryNonIdempotent = false; // 是否重试 POST 等非幂等方法, 开启后请求内容会重新发送
+        private double budgetRatio = 0.2; // 每个请求存入的重试额度, 即重试数最多约为请求数的 20%
+        private double budgetCapacity = 10; // 最多积攒的重试额度, 同时也是初始额度
+
+        private double budget = budgetCapacity; // 剩余重试额度
+        private final AtomicLong retryCount = new AtomicLong(); // 累计重试次数
+        private final AtomicLong exhaustedCount = new AtomicLong(); // 累计因额度耗尽放弃重试的次数
+
+        // 方法是否可重试
+        boolean isRetryable(String method) {
+            if (retryNonIdempotent) return true;
+            switch (method) {
+                case METHOD_GET_VALUE:
+                case METHOD_HEAD_VALUE:
+                case METHOD_OPTIONS_VALUE:
+                case METHOD_PUT_VALUE:
+                case METHOD_DELETE_VALUE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        // 响应后的重试等待时间(毫秒), < 0 不重试
+        long delay(int attempt, int code, String retryAfter) {
+            if (!retryStatuses.contains(code) || attempt > maxRetries) return -1;
+            long wait = $parseRetryAfter(retryAfter);
+            if (wait > maxDelay) return -1;
+            return withdraw(wait >= 0 ? wait : backoff(attempt));
+        }
+
+        // 连接失败后的重试等待时间(毫秒), < 0 不重试, 只重试连接失败, 超时, 连接重置
+        long delay(int attempt, IOException e) {
+            if (!(e instanceof SocketException || e instanceof SocketTimeoutException) || attempt > maxRetries) return -1;
+            return withdraw(backoff(attempt));
+        }
+
+        // 指数退避, 在 [退避时间 / 2, 退避时间] 之间随机, 避免同时失败的请求同时重试
+        private long backoff(int attempt) {
+            long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+            return delay <= 1 ? Math.max(0, delay) : ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+        }
+
+        // 存入重试额度
+        synchronized void deposit() {
+            budget = Math.min(budgetCapacity, budget + budgetRatio);
+        }
+
+        // 取出一次重试额度, 额度不足时不重试
+        private synchronized long withdraw(long delay) {
+            if (budget < 1) {
+                exhaustedCount.incrementAndGet();
+                return -1;
+            }
+            budget -= 1;
+            retryCount.incrementAndGet();
+            return delay;
+        }
+
+        // 解析 Retry-After, 秒数或 HTTP 日期, 无法解析时为 -1
+        private static long $parseRetryAfter(String retryAfter) {
+            if ($isEmptyString(retryAfter)) return -1;
+            try {
+                return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                long time = $parseHttpDate(retryAfter);
+                return time < 0 ? -1 : Math.max(0, time - System.currentTimeMillis());
+            }
+        }
+
+        // 累计重试次数
+        public long getRetryCount() {
+            return retryCount.get();
+        }
+
+        // 累计因额度耗尽放弃重试的次数
+        public long getExhaustedCount() {
+            return exhaustedCount.get();
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public RetryPolicy setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public long getBaseDelay() {
+            return baseDelay;
+        }
+
+        public RetryPolicy setBaseDelay(long baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+
+        public RetryPolicy setMaxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public Set<Integer> getRetryStatuses() {
+            return retryStatuses;
+        }
+
+        public RetryPolicy setRetryStatuses(Integer... retryStatuses) {
+            this.retryStatuses = new HashSet<>(Arrays.asList(retryStatuses));
+            return this;
+        }
+
+        public boolean isRetryNonIdempotent() {
+            return retryNonIdempotent;
+        }
+
+        public RetryPolicy setRetryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public RetryPolicy setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public double getBudgetCapacity() {
+            return budgetCapacity;
+        }
+
+        public synchronized RetryPolicy setBudgetCapacity(double budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+            this.budget = budgetCapacity;
+            return this;
+        }
+    }
+
+    // 限流器 ##########################################################################################################################
+    // 令牌桶: 每个客户端(限流器实例)一组, 每个主机一组, 分别限制每秒请求数和每秒下载字节数, 同时满足才放行
+    // 令牌不足时预占令牌并返回需要等待的时间, 同步请求在当前线程等待, 异步请求延迟提交, 不占用线程
+    // 多个 HTTP 可共享同一个 RateLimiter, 共享配额
+    public static class RateLimiter {
+        private double requestsPerSecond = 0; // 每秒请求数, <= 0 不限制
+        private long bytesPerSecond = 0; // 每秒下载字节数, <= 0 不限制
+        private double hostRequestsPerSecond = 0; // 每个主机每秒请求数, <= 0 不限制, 只影响新建的主机记录
+        private long hostBytesPerSecond = 0; // 每个主机每秒下载字节数, <= 0 不限制, 只影响新建的主机记录
+        private long idleTimeout = 60 * 1000; // 主机空闲超时时间, 超过后清理主机记录
+
+        private volatile Bucket requests; // 请求令牌桶
+        private volatile Bucket bytes; // 字节令牌桶
+        private final Map<String, Bucket> hostRequests = new ConcurrentHashMap<>(); // 主机请求令牌桶
+        private final Map<String, Bucket> hostBytes = new ConcurrentHashMap<>(); // 主机字节令牌桶
+        private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis()); // 上次清理时间
+
+        private final AtomicLong throttledNanos = new AtomicLong(); // 累计限流等待时间
+        private final AtomicLong throttledCount = new AtomicLong(); // 累计限流次数
+
+        // 预占一个请求令牌, 返回需要等待的纳秒数
+        long reserveRequest(String host) {
+            sweep();
+            long wait = $reserve(requests, 1);
+            if (hostRequestsPerSecond > 0) {
+                Bucket bucket = hostRequests.computeIfAbsent(host, key -> new Bucket(hostRequestsPerSecond));
+                wait = Math.max(wait, $reserve(bucket, 1));
+            }
+            return record(wait);
+        }
+
+        // 预占 count 字节的下载令牌, 返回需要等待的纳秒数
+        long reserveBytes(String host, long count) {
+            long wait = $reserve(bytes, count);
+            if (hostBytesPerSecond > 0) {
+                Bucket bucket = hostBytes.computeIfAbsent(host, key -> new Bucket(hostBytesPerSecond));
+                wait = Math.max(wait, $reserve(bucket, count));
+            }
+            return record(wait);
+        }
+
+        // 获取一个请求令牌, 不足时当前线程等待
+        void acquireRequest(String host) throws InterruptedException {
+            long wait = reserveRequest(host);
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        // 获取 count 字节的下载令牌, 不足时当前线程等待
+        void acquireBytes(String host, long count) throws InterruptedException {
+            long wait = reserveBytes(host, count);
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        private static long $reserve(Bucket bucket, double permits) {
+            return null == bucket ? 0 : bucket.reserve(permits);
+        }
+
+        // 统计限流等待
+        private long record(long wait) {
+            if (wait <= 0) return 0;
+            throttledNanos.addAndGet(wait);
+            throttledCount.incrementAndGet();
+            return wait;
+        }
+
+        // 清理空闲主机记录, 每个空闲周期最多执行一次
+        private void sweep() {
+            long now = System.currentTimeMillis();
+            long last = lastSweep.get();
+            if (now - last < idleTimeout || !lastSweep.compareAndSet(last, now)) return;
+            long nanos = System.nanoTime();
+            long idle = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+            hostRequests.values().removeIf(bucket -> bucket.isIdle(nanos, idle));
+            hostBytes.values().removeIf(bucket -> bucket.isIdle(nanos, idle));
+        }
+
+        // 累计限流等待时间(毫秒), 异步请求的延迟提交时间也计算在内
+        public long getThrottledTime() {
+            return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+        }
+
+        // 累计限流次数
+        public long getThrottledCount() {
+            return throttledCount.get();
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public RateLimiter setRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.requests = requestsPerSecond > 0 ? new Bucket(requestsPerSecond) : null;
+            return this;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public RateLimiter setBytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.bytes = bytesPerSecond > 0 ? new Bucket(bytesPerSecond) : null;
+            return this;
+        }
+
+        public double getHostRequestsPerSecond() {
+            return hostRequestsPerSecond;
+        }
+
+        public RateLimiter setHostRequestsPerSecond(double hostRequestsPerSecond) {
+            this.hostRequestsPerSecond = hostRequestsPerSecond;
+            return this;
+        }
+
+        public long getHostBytesPerSecond() {
+            return hostBytesPerSecond;
+        }
+
+        public RateLimiter setHostBytesPerSecond(long hostBytesPerSecond) {
+            this.hostBytesPerSecond = hostBytesPerSecond;
+            return this;
+        }
+
+        public long getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public RateLimiter setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        // 令牌桶, 最多积攒 1 秒的令牌(至少 1 个), 令牌可预支为负数, 后来的请求依次排在后面等待
+        private static class Bucket {
+            private final double rate; // 每秒生成的令牌数
+            private final double capacity; // 最多积攒的令牌数
+            private double tokens; // 当前令牌数
+            private long last = System.nanoTime(); // 上次计算时间
+
+            private Bucket(double rate) {
+                this.rate = rate;
+                this.capacity = Math.max(1, rate);
+                this.tokens = capacity;
+            }
+
+            // 取出 permits 个令牌, 返回需要等待的纳秒数
+            private synchronized long reserve(double permits) {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - last) * rate / 1e9);
+                last = now;
+                tokens -= permits;
+                return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+            }
+
+            // 令牌已经积满, 并且超过空闲时间
+            private synchronized boolean isIdle(long now, long idle) {
+                return now - last > idle && tokens + (now - last) * rate / 1e9 >= capacity;
+            }
+        }
+    }
+
+    // 非阻塞引擎 ######################################################################################################################
+    // 基于 Selector / SocketChannel 的 HTTP/1.1 客户端, 一个选择器线程管理所有连接, 等待响应不占用线程, 适合大量主机的抓取
+    // 1. 每个主机最多 maxConnectionsPerHost 个长连接, 超出的请求在主机队列中等待
+    // 2. GET / HEAD 请求流水线发送, 同一个连接上最多 pipelineDepth 个请求等待响应, 响应按顺序对应
+    // 3. 响应边读边解析(状态行, 响应头, Content-Length / chunked / 读到连接关闭), 响应体写入缓冲区池中的分段
+    // 4. 背压: 已读取但回调还没有执行完的响应总大小超过 maxBufferedBytes 时, 暂停读取所有连接, 由 TCP 流量控制限制服务端发送速度
+    // 5. 只支持 http://, 域名解析在回调执行器中进行, 不阻塞选择器线程
+    // 多个 HTTP 可共享同一个 NioEngine, 由创建者关闭
+    public static class NioEngine implements Closeable {
+        private int maxConnectionsPerHost = 4; // 每个主机最大连接数
+        private int pipelineDepth = 4; // 每个连接流水线上最多等待响应的请求数, 1 不使用流水线
+        private int connectTimeout = 10 * 1000; // 连接超时时间
+        private int readTimeout = 10 * 1000; // 读取超时时间, 发出请求后超过此时间没有读到数据
+        private int maxBodySize = 10 * 1024 * 1024; // 单个响应体最大长度
+        private long maxBufferedBytes = 64 * 1024 * 1024; // 已读取未消费的响应总大小, 超过后暂停读取
+        private int bufferSize = 16 * 1024; // 读缓冲区, 响应体分段大小
+        private Executor executor; // 回调和域名解析执行器, 为空时使用默认的守护线程池
+        private Resolver resolver; // 域名解析, 为空时使用 JVM 默认, 每个新连接解析一次, 多个地址时轮询
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // 提交到选择器线程执行的任务
+        private final Map<String, Host> hosts = new HashMap<>(); // 主机记录, 只在选择器线程中访问
+        private final List<Connection> connections = new ArrayList<>(); // 所有连接, 只在选择器线程中访问
+        private final AtomicLong bufferedBytes = new AtomicLong(); // 已读取未消费的响应字节数
+        private boolean paused = false; // 是否暂停读取
+        private ByteBuffer readBuffer; // 读缓冲区, 只有选择器线程使用
+        private volatile boolean closed = false;
+
+        public NioEngine() throws IOException {
+            selector = Selector.open();
+            Thread thread = new Thread(this::$loop, "HTTP-NIO");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * 发送请求
+         *
+         * @param method  请求方法
+         * @param url     请求地址, 只支持 http://
+         * @param headers 请求头, Host / Content-Length 自动设置, 名称或值包含换行时请求失败
+         * @param body    请求体, 可为空
+         * @return 响应, 响应体在缓冲区池中, 读取后调用 close() 归还缓冲区
+         */
+        public CompletableFuture<NioResponse> execute(String method, URL url, Map<String, String> headers, byte[] body) {
+            return execute(method, url, headers, body, 0, 0);
+        }
+
+        /**
+         * 发送请求, 指定本次请求的超时时间
+         *
+         * @param method         请求方法
+         * @param url            请求地址, 只支持 http://
+         * @param headers        请求头, Host / Content-Length 自动设置, 名称或值包含换行时请求失败
+         * @param body           请求体, 可为空
+         * @param connectTimeout 连接超时时间, <= 0 使用引擎设置
+         * @param readTimeout    读取超时时间, <= 0 使用引擎设置
+         * @return 响应, 响应体在缓冲区池中, 读取后调用 close() 归还缓冲区
+         */
+        public CompletableFuture<NioResponse> execute(String method, URL url, Map<String, String> headers, byte[] body, int connectTimeout, int readTimeout) {
+            CompletableFuture<NioResponse> future = new CompletableFuture<>();
+            String requestMethod = $getString(method, METHOD_GET_VALUE).toUpperCase();
+            try {
+                if (!"http".equalsIgnoreCase(url.getProtocol())) throw new Exception(String.format("NIO Engine Only Supports HTTP [%s]", url));
+                $checkRequest(requestMethod, url, headers);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+            Exchange exchange = new Exchange(requestMethod, url, headers, body, future);
+            exchange.connectTimeout = connectTimeout > 0 ? connectTimeout : this.connectTimeout;
+            exchange.readTimeout = readTimeout > 0 ? readTimeout : this.readTimeout;
+            $submit(() -> $enqueue(exchange), future);
+            return future;
+        }
+
+        // 校验请求, 请求方法, 请求目标, Header 中不允许出现换行, 防止拆分请求或注入 Header, 与 HttpURLConnection 一致
+        private static void $checkRequest(String method, URL url, Map<String, String> headers) throws Exception {
+            if (method.isEmpty() || $hasIllegalChar(method) || method.indexOf(' ') >= 0) throw new Exception(String.format("Illegal Request Method [%s]", method));
+            String target = $getString(url.getFile()) + $getString(url.getHost());
+            if ($hasIllegalChar(target) || target.indexOf(' ') >= 0) throw new Exception(String.format("Illegal Request Target [%s]", url));
+            if (null == headers) return;
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String name = $getString(header.getKey());
+                if (name.isEmpty() || $hasIllegalChar(name) || name.indexOf(':') >= 0) throw new Exception(String.format("Illegal Header Name [%s]", name));
+                if ($hasIllegalChar($getString(header.getValue()))) throw new Exception(String.format("Illegal Header Value [%s]", name));
+            }
+        }
+
+        private static boolean $hasIllegalChar(String value) {
+            return value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0;
+        }
+
+        // 提交到选择器线程
+        private void $submit(Runnable task, CompletableFuture<?> future) {
+            if (closed) {
+                if (null != future) future.completeExceptionally(new IOException("NIO Engine is Closed"));
+                return;
+            }
+            tasks.add(task);
+            selector.wakeup();
+            // 提交时引擎正在关闭, 选择器线程可能已经退出, 任务还在队列中时由此处结束
+            if (closed && tasks.remove(task) && null != future) future.completeExceptionally(new IOException("NIO Engine is Closed"));
+        }
+
+        private Executor $executor() {
+            return null == executor ? $getDefaultExecutor() : executor;
+        }
+
+        // 选择器线程
+        private void $loop() {
+            readBuffer = ByteBuffer.allocateDirect(Math.max(BUFFER_MIN_SIZE, bufferSize));
+            while (!closed) {
+                try {
+                    selector.select(500);
+                    Runnable task;
+                    while (null != (task = tasks.poll())) {
+                        try {
+                            task.run();
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        $handle(key);
+                    }
+                    $checkTimeouts();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // 关闭引擎, 结束所有请求
+            IOException error = new IOException("NIO Engine is Closed");
+            for (Connection connection : new ArrayList<>(connections)) connection.close(error, false);
+            for (Host host : hosts.values()) for (Exchange exchange : host.queue) exchange.future.completeExceptionally(error);
+            hosts.clear();
+            Runnable task;
+            while (null != (task = tasks.poll())) task.run(); // 关闭前提交的任务, $enqueue / $dispatch 检查关闭状态, 请求直接失败, 不会再建立连接
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        // 请求加入主机队列
+        private void $enqueue(Exchange exchange) {
+            if (closed) {
+                exchange.future.completeExceptionally(new IOException("NIO Engine is Closed"));
+                return;
+            }
+            Host host = hosts.computeIfAbsent($getHostKey(exchange.url), key -> new Host(exchange.url));
+            host.queue.add(exchange);
+            $dispatch(host);
+        }
+
+        // 把主机队列中的请求分配到连接上, 连接不够时新建连接
+        private void $dispatch(Host host) {
+            if (closed) {
+                $failHost(host, new IOException("NIO Engine is Closed"));
+                return;
+            }
+            for (Connection connection : host.connections) {
+                while (!host.queue.isEmpty() && connection.accepts(host.queue.peek())) connection.send(host.queue.poll());
+            }
+            if (host.queue.isEmpty() || host.connections.size() >= Math.max(1, maxConnectionsPerHost)) return;
+            for (Connection connection : host.connections) if (!connection.connected) return; // 已有连接在建立中, 建立后再分配
+
+            // 先解析域名, DnsCache 中有未过期的地址时直接使用, 否则在执行器中解析
+            Resolver dns = resolver;
+            if (null == host.address && dns instanceof DnsCache) {
+                InetAddress[] cached = ((DnsCache) dns).resolveCached(host.name);
+                if (null != cached) host.address = new InetSocketAddress(cached[0], host.port);
+            }
+            if (null == host.address) {
+                if (host.resolving) return;
+                host.resolving = true;
+                try {
+                    $executor().execute(() -> {
+                        try {
+                            InetAddress[] addresses = null == dns ? InetAddress.getAllByName(host.name) : dns.resolve(host.name);
+                            if (null == addresses || 0 == addresses.length) throw new UnknownHostException(host.name);
+                            // 解析器自己轮询, 使用第一个地址, JVM 默认解析按连接轮询
+                            InetAddress chosen = null != dns ? addresses[0] : addresses[(host.next++ & Integer.MAX_VALUE) % addresses.length];
+                            InetSocketAddress address = new InetSocketAddress(chosen, host.port);
+                            $submit(() -> {
+                                host.resolving = false;
+                                host.address = address;
+                                $dispatch(host);
+                            }, null);
+                        } catch (IOException e) {
+                            $submit(() -> {
+                                host.resolving = false;
+                                $failHost(host, e);
+                            }, null);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    host.resolving = false;
+                    $failHost(host, new IOException(e));
+                }
+                return;
+            }
+
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(host, channel, host.queue.peek().connectTimeout);
+                host.connections.add(connection);
+                connections.add(connection);
+                InetSocketAddress address = host.address;
+                host.address = null; // 每个新连接重新解析, 地址由解析器缓存
+                if (channel.connect(address)) connection.connected();
+                else connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            } catch (IOException e) {
+                $failHost(host, e);
+            }
+        }
+
+        // 主机无法连接, 队列中的请求全部失败
+        private void $failHost(Host host, IOException e) {
+            Exchange exchange;
+            while (null != (exchange = host.queue.poll())) exchange.future.completeExceptionally(e);
+            host.address = null; // 下次重新解析
+            $removeIdle(host);
+        }
+
+        // 没有连接和等待中的请求时, 删除主机记录
+        private void $removeIdle(Host host) {
+            if (host.connections.isEmpty() && host.queue.isEmpty() && !host.resolving) hosts.remove(host.key, host);
+        }
+
+        private void $handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (!key.isValid()) return;
+                if (key.isConnectable() && connection.channel.finishConnect()) connection.connected();
+                if (key.isValid() && key.isWritable()) connection.write();
+                if (key.isValid() && key.isReadable()) connection.read();
+            } catch (IOException e) {
+                connection.close(e, true);
+            }
+        }
+
+        // 连接超时, 读取超时
+        private void $checkTimeouts() {
+            long now = System.currentTimeMillis();
+            for (Connection connection : new ArrayList<>(connections)) {
+                if (!connection.connected && connection.connectTimeout > 0 && now - connection.lastActivity > connection.connectTimeout)
+                    connection.close(new SocketTimeoutException(String.format("Connect Timed Out [%s]", connection.host.key)), true);
+                else if (connection.connected && !paused && !connection.inflight.isEmpty() && connection.inflight.peek().readTimeout > 0
+                        && now - connection.lastActivity > connection.inflight.peek().readTimeout)
+                    connection.close(new SocketTimeoutException(String.format("Read Timed Out [%s]", connection.host.key)), false);
+            }
+        }
+
+        // 响应交给回调, 回调执行完后释放背压计数
+        private void $complete(Exchange exchange, NioResponse response) {
+            long size = response.length;
+            if (bufferedBytes.addAndGet(size) > maxBufferedBytes && !paused) $pause(true);
+            try {
+                $executor().execute(() -> {
+                    try {
+                        exchange.future.complete(response);
+                    } finally {
+                        $release(size);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                $release(size);
+                response.close();
+                exchange.future.completeExceptionally(e);
+            }
+        }
+
+        private void $release(long size) {
+            if (bufferedBytes.addAndGet(-size) <= maxBufferedBytes / 2 && paused) $submit(() -> {
+                if (paused && bufferedBytes.get() <= maxBufferedBytes / 2) $pause(false);
+            }, null);
+        }
+
+        // 暂停或恢复读取
+        private void $pause(boolean pause) {
+            paused = pause;
+            long now = System.currentTimeMillis();
+            for (Connection connection : connections) {
+                if (!connection.connected || !connection.key.isValid()) continue;
+                connection.lastActivity = now;
+                connection.updateInterest();
+            }
+        }
+
+        // 关闭引擎, 未完成的请求失败
+        @Override
+        public void close() {
+            closed = true;
+            selector.wakeup();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        // 已读取, 回调还没有执行完的响应字节数
+        public long getBufferedBytes() {
+            return bufferedBytes.get();
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+
+        public NioEngine setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public int getPipelineDepth() {
+            return pipelineDepth;
+        }
+
+        public NioEngine setPipelineDepth(int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public NioEngine setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public NioEngine setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public int getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public NioEngine setMaxBodySize(int maxBodySize) {
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        public long getMaxBufferedBytes() {
+            return maxBufferedBytes;
+        }
+
+        public NioEngine setMaxBufferedBytes(long maxBufferedBytes) {
+            this.maxBufferedBytes = maxBufferedBytes;
+            return this;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        // 在发出第一个请求之前设置
+        public NioEngine setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        public NioEngine setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Resolver getResolver() {
+            return resolver;
+        }
+
+        public NioEngine setResolver(Resolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        // 单个主机
+        private static class Host {
+            private final String key; // 主机标识
+            private final String name; // 主机名
+            private final int port;
+            private final Deque<Exchange> queue = new ArrayDeque<>(); // 等待分配连接的请求
+            private final List<Connection> connections = new ArrayList<>();
+            private InetSocketAddress address; // 下一个连接使用的地址
+            private int next = 0; // 轮询序号, 只在解析时使用
+            private boolean resolving = false; // 是否在解析中
+
+            private Host(URL url) {
+                this.key = $getHostKey(url);
+                this.name = url.getHost();
+                this.port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+            }
+        }
+
+        // 单个请求
+        private static class Exchange {
+            private final String method;
+            private final URL url;
+            private final Map<String, String> headers;
+            private final byte[] body;
+            private final CompletableFuture<NioResponse> future;
+            private int attempts = 0; // 发送次数, 连接在收到响应前断开时, 幂等请求重新发送一次
+            private int connectTimeout; // 连接超时时间
+            private int readTimeout; // 读取超时时间
+
+            private Exchange(String method, URL url, Map<String, String> headers, byte[] body, CompletableFuture<NioResponse> future) {
+                this.method = method;
+                this.url = url;
+                this.headers = headers;
+                this.body = body;
+                this.future = future;
+            }
+
+            // 是否可以流水线发送, 只有 GET / HEAD
+            private boolean pipelined() {
+                return METHOD_GET_VALUE.equals(method) || METHOD_HEAD_VALUE.equals(method);
+            }
+
+            // 请求报文
+            private ByteBuffer encode() {
+                String path = $isEmptyString(url.getFile()) ? "/" : url.getFile();
+                int port = url.getPort();
+                StringBuilder head = new StringBuilder(256);
+                head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+                head.append("Host: ").append(url.getHost()).append(port < 0 || port == url.getDefaultPort() ? "" : ":" + port).append("\r\n");
+                if (null != headers) headers.forEach((key, value) -> {
+                    if ("host".equalsIgnoreCase(key) || "content-length".equalsIgnoreCase(key) || "transfer-encoding".equalsIgnoreCase(key)) return;
+                    head.append(key).append(": ").append(value).append("\r\n");
+                });
+                if (null != body || METHOD_POST_VALUE.equals(method) || METHOD_PUT_VALUE.equals(method))
+                    head.append("Content-Length: ").append(null == body ? 0 : body.length).append("\r\n");
+                head.append("\r\n");
+                byte[] bytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+                ByteBuffer buffer = ByteBuffer.allocate(bytes.length + (null == body ? 0 : body.length));
+                buffer.put(bytes);
+                if (null != body) buffer.put(body);
+                buffer.flip();
+                return buffer;
+            }
+        }
+
+        // 单个连接
+        private class Connection {
+            private final Host host;
+            private final SocketChannel channel;
+            private SelectionKey key;
+            private boolean connected = false;
+            private boolean closing = false; // 服务端要求关闭, 当前响应读完后关闭
+            private long lastActivity = System.currentTimeMillis(); // 最后一次连接, 读写时间
+            private final Deque<Exchange> inflight = new ArrayDeque<>(); // 已发送, 等待响应的请求, 按发送顺序排列
+            private final Deque<ByteBuffer> output = new ArrayDeque<>(); // 等待写出的报文
+            private final Parser parser = new Parser();
+            private final int connectTimeout; // 连接超时时间, 取自触发建立连接的请求
+
+            private Connection(Host host, SocketChannel channel, int connectTimeout) {
+                this.host = host;
+                this.channel = channel;
+                this.connectTimeout = connectTimeout;
+            }
+
+            // 能否在此连接上发送请求, 空闲连接可发送任何请求, 流水线上只能追加 GET / HEAD
+            private boolean accepts(Exchange exchange) {
+                if (!connected || closing) return false;
+                if (inflight.isEmpty()) return true;
+                if (inflight.size() >= Math.max(1, pipelineDepth) || !exchange.pipelined()) return false;
+                for (Exchange previous : inflight) if (!previous.pipelined()) return false;
+                return true;
+            }
+
+            private void connected() throws IOException {
+                connected = true;
+                lastActivity = System.currentTimeMillis();
+                if (null == key) key = channel.register(selector, SelectionKey.OP_READ, this);
+                updateInterest();
+                $dispatch(host);
+            }
+
+            private void send(Exchange exchange) {
+                exchange.attempts++;
+                if (inflight.isEmpty()) lastActivity = System.currentTimeMillis();
+                inflight.add(exchange);
+                output.add(exchange.encode());
+                updateInterest();
+            }
+
+            private void updateInterest() {
+                if (null == key || !key.isValid()) return;
+                int ops = connected ? 0 : SelectionKey.OP_CONNECT;
+                if (connected && !paused) ops |= SelectionKey.OP_READ;
+                if (connected && !output.isEmpty()) ops |= SelectionKey.OP_WRITE;
+                key.interestOps(ops);
+            }
+
+            private void write() throws IOException {
+                while (!output.isEmpty()) {
+                    ByteBuffer buffer = output.peek();
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) break; // 发送缓冲区满, 等下次可写
+                    output.poll();
+                }
+                updateInterest();
+            }
+
+            private void read() throws IOException {
+                readBuffer.clear();
+                int count = channel.read(readBuffer);
+                if (count < 0) {
+                    // 读到连接关闭为止的响应在此结束
+                    if (parser.untilClose && !inflight.isEmpty()) {
+                        $complete(inflight.poll(), parser.finish());
+                        close(null, false);
+                        return;
+                    }
+                    close(new IOException(String.format("Connection Closed [%s]", host.key)), true);
+                    return;
+                }
+                lastActivity = System.currentTimeMillis();
+                readBuffer.flip();
+                while (readBuffer.hasRemaining()) {
+                    if (inflight.isEmpty()) throw new IOException(String.format("Unexpected Response Data [%s]", host.key));
+                    NioResponse response = parser.feed(readBuffer, inflight.peek());
+                    if (null == response) continue;
+                    Exchange exchange = inflight.poll();
+                    if (parser.close) closing = true;
+                    $complete(exchange, response);
+                    if (closing) {
+                        close(null, false);
+                        return;
+                    }
+                }
+                if (inflight.isEmpty()) $dispatch(host);
+            }
+
+            // 关闭连接, 还没收到响应的请求: 幂等请求重新排队一次, 其他失败
+            private void close(IOException error, boolean retryable) {
+                if (null != key) key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                connections.remove(this);
+                host.connections.remove(this);
+                parser.discard();
+
+                IOException cause = null == error ? new IOException(String.format("Connection Closed [%s]", host.key)) : error;
+                Deque<Exchange> requeue = new ArrayDeque<>();
+                for (Exchange exchange : inflight) {
+                    boolean first = requeue.isEmpty() && exchange == inflight.peek();
+                    boolean started = first && parser.started;
+                    if ((retryable || closing || null == error) && !started && exchange.pipelined() && exchange.attempts < 2) requeue.add(exchange);
+                    else exchange.future.completeExceptionally(cause);
+                }
+                inflight.clear();
+                output.clear();
+                while (!requeue.isEmpty()) host.queue.addFirst(requeue.pollLast());
+                if (!host.queue.isEmpty() && !closed) {
+                    if (null != error && !connected && host.connections.isEmpty()) $failHost(host, error);
+                    else $dispatch(host);
+                }
+                $removeIdle(host);
+            }
+        }
+
+        // 响应解析器, 边读边解析, 一个连接上的响应依次解析
+        private class Parser {
+            private static final int STATUS = 0, HEADERS = 1, BODY = 2, CHUNK_SIZE = 3, CHUNK_DATA = 4, CHUNK_END = 5, TRAILERS = 6;
+            private static final int MAX_LINE = 64 * 1024; // 状态行, 响应头单行最大长度
+
+            private int state = STATUS;
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream(); // 当前行
+            private boolean started = false; // 当前响应是否已收到数据
+            private boolean untilClose = false; // 响应体读到连接关闭为止
+            private boolean close = false; // 响应后关闭连接
+            private String version;
+            private int code;
+            private Map<String, List<String>> headers;
+            private long remain; // 当前响应体或当前块剩余长度
+            private List<byte[]> segments; // 响应体分段, 从缓冲区池中获取
+            private int segmentSize; // 分段大小
+            private long length; // 响应体长度
+
+            // 解析数据, 一个响应结束时返回响应, 剩余数据留在 buffer 中
+            private NioResponse feed(ByteBuffer buffer, Exchange exchange) throws IOException {
+                started = true;
+                while (buffer.hasRemaining()) {
+                    switch (state) {
+                        case STATUS:
+                        case HEADERS:
+                        case CHUNK_SIZE:
+                        case CHUNK_END:
+                        case TRAILERS:
+                            String text = readLine(buffer);
+                            if (null == text) return null;
+                            NioResponse response = onLine(text, exchange);
+                            if (null != response) return response;
+                            break;
+                        case BODY:
+                        case CHUNK_DATA:
+                            int count = untilClose ? buffer.remaining() : (int) Math.min(remain, buffer.remaining());
+                            append(buffer, count);
+                            remain -= count;
+                            if (untilClose || remain > 0) break;
+                            if (BODY == state) return finish();
+                            state = CHUNK_END;
+                            break;
+                        default:
+                            throw new IOException("Illegal Parser State");
+                    }
+                }
+                return null;
+            }
+
+            // 处理一行
+            private NioResponse onLine(String text, Exchange exchange) throws IOException {
+                switch (state) {
+                    case STATUS:
+                        if (text.isEmpty()) return null; // 忽略响应之间的空行
+                        String[] parts = text.split(" ", 3);
+                        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) throw new IOException(String.format("Illegal Status Line [%s]", text));
+                        version = parts[0];
+                        try {
+                            code = Integer.parseInt(parts[1]);
+                        } catch (NumberFormatException e) {
+                            throw new IOException(String.format("Illegal Status Line [%s]", text));
+                        }
+                        headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                        state = HEADERS;
+                        return null;
+                    case HEADERS:
+                        if (!text.isEmpty()) {
+                            int p = text.indexOf(':');
+                            if (p > 0) headers.computeIfAbsent(text.substring(0, p).trim(), k -> new ArrayList<>()).add(text.substring(p + 1).trim());
+                            return null;
+                        }
+                        return onHeaders(exchange);
+                    case CHUNK_SIZE:
+                        int end = text.indexOf(';');
+                        try {
+                            remain = Long.parseLong((end < 0 ? text : text.substring(0, end)).trim(), 16);
+                        } catch (NumberFormatException e) {
+                            throw new IOException(String.format("Illegal Chunk Size [%s]", text));
+                        }
+                        state = 0 == remain ? TRAILERS : CHUNK_DATA;
+                        return null;
+                    case CHUNK_END:
+                        state = CHUNK_SIZE;
+                        return null;
+                    case TRAILERS:
+                        return text.isEmpty() ? finish() : null;
+                    default:
+                        throw new IOException("Illegal Parser State");
+                }
+            }
+
+            // 响应头结束, 确定响应体的读取方式
+            private NioResponse onHeaders(Exchange exchange) throws IOException {
+                if (code >= 100 && code < 200) { // 1xx 临时响应, 继续读取最终响应
+                    state = STATUS;
+                    return null;
+                }
+                String connection = $getString(header("Connection")).toLowerCase();
+                close = connection.contains("close") || ("HTTP/1.0".equals(version) && !connection.contains("keep-alive"));
+                segments = new ArrayList<>();
+                segmentSize = Math.max(BUFFER_MIN_SIZE, bufferSize);
+                length = 0;
+
+                if (METHOD_HEAD_VALUE.equals(exchange.method) || 204 == code || 304 == code) return finish();
+                if ($getString(header("Transfer-Encoding")).toLowerCase().contains("chunked")) {
+                    state = CHUNK_SIZE;
+                    return null;
+                }
+                String contentLength = header("Content-Length");
+                if (!$isEmptyString(contentLength)) {
+                    try {
+                        remain = Long.parseLong(contentLength.trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException(String.format("Illegal Content-Length [%s]", contentLength));
+                    }
+                    if (remain > maxBodySize) throw new IOException(String.format("Response Body Too Large [%s]", remain));
+                    if (0 == remain) return finish();
+                    state = BODY;
+                    return null;
+                }
+                untilClose = true; // 没有长度, 读到连接关闭
+                close = true;
+                state = BODY;
+                return null;
+            }
+
+            private String header(String name) {
+                List<String> values = headers.get(name);
+                return null == values || values.isEmpty() ? null : values.get(values.size() - 1);
+            }
+
+            // 读取一行, 没有读到行尾时返回空, 已读取的部分保留
+            private String readLine(ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if ('\n' == b) {
+                        byte[] bytes = line.toByteArray();
+                        line.reset();
+                        int size = bytes.length > 0 && '\r' == bytes[bytes.length - 1] ? bytes.length - 1 : bytes.length;
+                        return new String(bytes, 0, size, StandardCharsets.ISO_8859_1);
+                    }
+                    if (line.size() >= MAX_LINE) throw new IOException("Response Line Too Long");
+                    line.write(b);
+                }
+                return null;
+            }
+
+            // 响应体写入分段
+            private void append(ByteBuffer buffer, int count) throws IOException {
+                if (length + count > maxBodySize) throw new IOException(String.format("Response Body Too Large [%s]", length + count));
+                int left = count;
+                while (left > 0) {
+                    int used = (int) (length % segmentSize);
+                    if (0 == used) segments.add($BYTE_BUFFERS.acquire(segmentSize));
+                    byte[] segment = segments.get(segments.size() - 1);
+                    int size = Math.min(left, segmentSize - used);
+                    buffer.get(segment, used, size);
+                    length += size;
+                    left -= size;
+                }
+            }
+
+            // 当前响应结束, 重置状态解析下一个响应
+            private NioResponse finish() {
+                NioResponse response = new NioResponse(code, headers, segments, segmentSize, length);
+                state = STATUS;
+                started = false;
+                untilClose = false;
+                segments = null;
+                length = 0;
+                return response;
+            }
+
+            // 连接异常关闭, 归还未完成响应的分段
+            private void discard() {
+                if (null != segments) for (byte[] segment : segments) $BYTE_BUFFERS.release(segmentSize, segment);
+                segments = null;
+            }
+        }
+    }
+
+    // 非阻塞引擎的响应, 响应体保存在缓冲区池的分段中, 读取完调用 close() 归还, 不调用时由 GC 回收
+    public static class NioResponse implements Closeable {
+        private final int code; // 响应状态码
+        private final Map<String, List<String>> headers; // 响应头, 名称不区分大小写
+        private List<byte[]> segments; // 响应体分段
+        private final int segmentSize;
+        private final long length; // 响应体长度
+
+        private NioResponse(int code, Map<String, List<String>> headers, List<byte[]> segments, int segmentSize, long length) {
+            this.code = code;
+            this.headers = headers;
+            this.segments = null == segments ? new ArrayList<>() : segments;
+            this.segmentSize = segmentSize;
+            this.length = length;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return null == values || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        // 响应体, 未解码
+        public synchronized InputStream getInputStream() throws IOException {
+            if (null == segments) throw new IOException("Response is Closed");
+            List<byte[]> parts = segments;
+            return new InputStream() {
+                private long position = 0;
+
+                @Override
+                public int read() {
+                    if (position >= length) return -1;
+                    byte b = parts.get((int) (position / segmentSize))[(int) (position % segmentSize)];
+                    position++;
+                    return b & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position >= length) return -1;
+                    if (0 == len) return 0;
+                    int used = (int) (position % segmentSize);
+                    int count = (int) Math.min(Math.min(len, segmentSize - used), length - position);
+                    System.arraycopy(parts.get((int) (position / segmentSize)), used, b, off, count);
+                    position += count;
+                    return count;
+                }
+            };
+        }
+
+        // 响应体, 未解码
+        public byte[] getBody() throws IOException {
+            byte[] body = new byte[(int) length];
+            try (InputStream input = getInputStream()) {
+                int offset = 0;
+                int count;
+                while (offset < body.length && -1 != (count = input.read(body, offset, body.length - offset))) offset += count;
+            }
+            return body;
+        }
+
+        // 归还响应体分段
+        @Override
+        public synchronized void close() {
+            if (null == segments) return;
+            for (byte[] segment : segments) $BYTE_BUFFERS.release(segmentSize, segment);
+            segments = null;
+        }
+    }
+
+    // 域名解析 ########################################################################################################################
+    // 把主机名解析为地址, 返回多个地址时调用方使用第一个
+    public interface Resolver {
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    // 域名解析缓存
+    // 1. 解析结果缓存 ttl 毫秒, 解析失败缓存 negativeTtl 毫秒, 期间同一主机直接失败, 不再重复查询
+    // 2. 缓存已过 refreshAhead 比例的 ttl 后, 访问时在后台刷新, 刷新完成前继续使用旧地址, 请求不等待解析
+    // 3. 每次返回的地址按顺序轮换, 调用方使用第一个地址即可在多个地址之间轮询
+    // 4. 同一主机同时只解析一次, 最多缓存 maxSize 个主机, 超出时删除最久未使用的
+    // 5. addHost 添加静态地址, 不查询 DNS, 可用于测试或替代 hosts 文件
+    // JDK 的解析接口不返回 DNS 记录的 TTL, ttl 由调用方按需设置, 多个 NioEngine 可共享同一个 DnsCache, 阻塞请求不使用
+    public static class DnsCache implements Resolver {
+        private static final Pattern IP_PATTERN = Pattern.compile("^(\\d{1,3}(\\.\\d{1,3}){3}|[0-9a-fA-F.]*:[0-9a-fA-F:.]*)$"); // IPv4 / IPv6
+
+        private Resolver delegate = InetAddress::getAllByName; // 实际解析, 默认使用 JVM 解析
+        private long ttl = 60 * 1000; // 解析结果缓存时间
+        private long negativeTtl = 10 * 1000; // 解析失败缓存时间, <= 0 不缓存失败
+        private double refreshAhead = 0.8; // 缓存时间过了此比例后后台刷新, >= 1 不提前刷新
+        private int maxSize = 10000; // 最多缓存的主机数
+        private Executor executor; // 后台刷新执行器, 为空时使用默认的守护线程池
+
+        private final Map<String, InetAddress[]> hosts = new ConcurrentHashMap<>(); // 静态地址
+        private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // 主机 => 缓存, 按访问顺序排列
+        private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>(); // 解析中的主机
+
+        private final AtomicLong hitCount = new AtomicLong(); // 命中次数
+        private final AtomicLong missCount = new AtomicLong(); // 未命中, 需要等待解析的次数
+        private final AtomicLong refreshCount = new AtomicLong(); // 后台刷新次数
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            String key = $getString(host).toLowerCase();
+            InetAddress[] addresses = $lookup(key);
+            if (null != addresses) return addresses;
+
+            Entry entry = $get(key);
+            if (null == entry) {
+                missCount.incrementAndGet();
+                entry = $load(key, host);
+            } else hitCount.incrementAndGet();
+            if (null == entry.addresses) throw new UnknownHostException(host);
+            return entry.next();
+        }
+
+        /**
+         * 只从缓存中获取, 没有缓存, 缓存已过期或是解析失败的缓存时返回空, 不会等待解析
+         *
+         * @param host 主机名
+         * @return 地址, 已轮换顺序
+         */
+        public InetAddress[] resolveCached(String host) {
+            String key = $getString(host).toLowerCase();
+            InetAddress[] addresses = $lookup(key);
+            if (null != addresses) return addresses;
+
+            Entry entry = $get(key);
+            if (null == entry || null == entry.addresses) return null;
+            hitCount.incrementAndGet();
+            return entry.next();
+        }
+
+        /**
+         * 预先解析, 在后台执行, 首次请求时不再等待解析
+         *
+         * @param hosts 主机名
+         */
+        public void prefetch(String... hosts) {
+            if (null == hosts) return;
+            for (String host : hosts) {
+                if ($isEmptyString(host)) continue;
+                String key = host.toLowerCase();
+                if (this.hosts.containsKey(key) || null != $get(key)) continue;
+                try {
+                    $executor().execute(() -> $load(key, host));
+                } catch (RejectedExecutionException ignored) {
+                }
+            }
+        }
+
+        // 静态地址, 有静态地址时不查询缓存
+        private InetAddress[] $lookup(String key) {
+            InetAddress[] addresses = hosts.get(key);
+            if (null == addresses) return null;
+            if (addresses.length > 1) {
+                InetAddress[] rotated = addresses.clone();
+                Collections.rotate(Arrays.asList(rotated), -1);
+                hosts.replace(key, addresses, rotated);
+            }
+            return addresses.clone();
+        }
+
+        // 获取未过期的缓存, 到达刷新时间时提交后台刷新
+        private Entry $get(String key) {
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+            }
+            if (null == entry) return null;
+            long now = System.currentTimeMillis();
+            if (now >= entry.expiresAt) return null;
+            if (null != entry.addresses && now >= entry.refreshAt && !entry.refreshing) $refresh(key, entry);
+            return entry;
+        }
+
+        // 解析并缓存, 同一主机同时只解析一次, 其他调用等待同一个结果
+        private Entry $load(String key, String host) {
+            CompletableFuture<Entry> future = new CompletableFuture<>();
+            CompletableFuture<Entry> running = loading.putIfAbsent(key, future);
+            if (null != running) return running.join();
+            try {
+                Entry entry;
+                try {
+                    InetAddress[] addresses = delegate.resolve(host);
+                    if (null == addresses || 0 == addresses.length) throw new UnknownHostException(host);
+                    entry = new Entry(addresses, ttl, refreshAhead);
+                } catch (UnknownHostException e) {
+                    entry = new Entry(null, negativeTtl, 1);
+                }
+                $put(key, entry);
+                future.complete(entry);
+                return entry;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(key, future);
+            }
+        }
+
+        // 后台刷新, 失败时保留旧地址直到过期
+        private void $refresh(String key, Entry entry) {
+            synchronized (entry) {
+                if (entry.refreshing) return;
+                entry.refreshing = true;
+            }
+            refreshCount.incrementAndGet();
+            try {
+                $executor().execute(() -> {
+                    try {
+                        InetAddress[] addresses = delegate.resolve(key);
+                        if (null != addresses && addresses.length > 0) $put(key, new Entry(addresses, ttl, refreshAhead));
+                    } catch (Exception ignored) {
+                    } finally {
+                        entry.refreshing = false;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                entry.refreshing = false;
+            }
+        }
+
+        private void $put(String key, Entry entry) {
+            if (entry.expiresAt <= System.currentTimeMillis()) return; // 不缓存
+            synchronized (entries) {
+                entries.put(key, entry);
+                Iterator<String> iterator = entries.keySet().iterator();
+                while (entries.size() > Math.max(1, maxSize) && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        private Executor $executor() {
+            return null == executor ? $getDefaultExecutor() : executor;
+        }
+
+        /**
+         * 添加静态地址, 不查询 DNS
+         *
+         * @param host 主机名
+         * @param ips  IP 地址, 多个时轮询
+         * @return this
+         * @throws UnknownHostException IP 格式错误
+         */
+        public DnsCache addHost(String host, String... ips) throws UnknownHostException {
+            if ($isEmptyString(host) || null == ips || 0 == ips.length) return this;
+            InetAddress[] addresses = new InetAddress[ips.length];
+            for (int i = 0; i < ips.length; i++) {
+                if (null == ips[i] || !IP_PATTERN.matcher(ips[i]).matches()) throw new UnknownHostException(String.format("Illegal IP Address [%s]", ips[i]));
+                addresses[i] = InetAddress.getByAddress(host, InetAddress.getByName(ips[i]).getAddress());
+            }
+            hosts.put(host.toLowerCase(), addresses);
+            return this;
+        }
+
+        public DnsCache removeHost(String host) {
+            hosts.remove($getString(host).toLowerCase());
+            return this;
+        }
+
+        // 删除单个主机的缓存
+        public void invalidate(String host) {
+            synchronized (entries) {
+                entries.remove($getString(host).toLowerCase());
+            }
+        }
+
+        // 清空缓存, 不包括静态地址
+        public void clear() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        public int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+
+        public long getHitCount() {
+            return hitCount.get();
+        }
+
+        public long getMissCount() {
+            return missCount.get();
+        }
+
+        public long getRefreshCount() {
+            return refreshCount.get();
+        }
+
+        public Resolver getDelegate() {
+            return delegate;
+        }
+
+        public DnsCache setDelegate(Resolver delegate) {
+            this.delegate = null == delegate ? InetAddress::getAllByName : delegate;
+            return this;
+        }
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public DnsCache setTtl(long ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public long getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public DnsCache setNegativeTtl(long negativeTtl) {
+            this.negativeTtl = negativeTtl;
+            return this;
+        }
+
+        public double getRefreshAhead() {
+            return refreshAhead;
+        }
+
+        public DnsCache setRefreshAhead(double refreshAhead) {
+            this.refreshAhead = refreshAhead;
+            return this;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public DnsCache setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        public DnsCache setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        // 单个主机的缓存, 解析失败时地址为空
+        private static class Entry {
+            private final InetAddress[] addresses;
+            private final long expiresAt; // 过期时间
+            private final long refreshAt; // 后台刷新时间
+            private final AtomicInteger next = new AtomicInteger(); // 轮询序号
+            private volatile boolean refreshing = false; // 是否在刷新中
+
+            private Entry(InetAddress[] addresses, long ttl, double refreshAhead) {
+                this.addresses = addresses;
+                long now = System.currentTimeMillis();
+                this.expiresAt = now + Math.max(0, ttl);
+                this.refreshAt = now + (long) (Math.max(0, ttl) * Math.max(0, Math.min(1, refreshAhead)));
+            }
+
+            // 按轮询序号轮换地址顺序
+            private InetAddress[] next() {
+                InetAddress[] result = new InetAddress[addresses.length];
+                int offset = (next.getAndIncrement() & Integer.MAX_VALUE) % addresses.length;
+                for (int i = 0; i < addresses.length; i++) result[i] = addresses[(offset + i) % addresses.length];
+                return result;
+            }
+        }
+    }
+
+    // 缓冲区池 ########################################################################################################################
+    // 按大小复用缓冲区, 用完归还, 池中总字节数超过 BUFFER_POOL_BYTES 时丢弃, 大流量传输时不再每次创建新的数组, 虚拟线程下同样有效
+    private static class BufferPool<T> {
+        private final Function<Integer, T> factory; // 创建缓冲区
+        private final int unitBytes; // 每个元素的字节数
+        private final Map<Integer, Queue<T>> buffers = new ConcurrentHashMap<>(); // 大小 => 空闲缓冲区
+        private final AtomicLong pooledBytes = new AtomicLong(); // 池中空闲缓冲区的总字节数
+
+        private BufferPool(Function<Integer, T> factory, int unitBytes) {
+            this.factory = factory;
+            this.unitBytes = unitBytes;
+        }
+
+        private T acquire(int size) {
+            Queue<T> queue = buffers.get(size);
+            T buffer = null == queue ? null : queue.poll();
+            if (null == buffer) return factory.apply(size);
+            pooledBytes.addAndGet(-(long) size * unitBytes);
+            return buffer;
+        }
+
+        private void release(int size, T buffer) {
+            if (null == buffer) return;
+            long bytes = (long) size * unitBytes;
+            if (pooledBytes.addAndGet(bytes) > BUFFER_POOL_BYTES) { // 池满, 丢弃
+                pooledBytes.addAndGet(-bytes);
+                return;
+            }
+            buffers.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).offer(buffer);
+        }
+    }
+
+    // 下载进度 ########################################################################################################################
+    // bytes: 已下载字节数, total: 文件总大小, 未知时为 -1, bytesPerSecond: 距上次回调的平均速度
+    public interface ProgressListener {
+        void onProgress(long bytes, long total, double bytesPerSecond);
+    }
+
+    // 下载进度统计, 每次写入只做一次累加和比较, 达到时间或字节间隔时才回调, 分段下载时多个线程共享
+    private static class Progress {
+        private final ProgressListener listener;
+        private final long total; // 文件总大小
+        private final long intervalNanos; // 回调最小间隔时间
+        private final long intervalBytes; // 回调最小间隔字节数
+        private final AtomicLong bytes; // 已下载字节数
+        private volatile long lastBytes; // 上次回调时的字节数
+        private volatile long lastTime = System.nanoTime(); // 上次回调时间
+        private boolean reported = false; // 是否回调过
+
+        private Progress(ProgressListener listener, long total, long offset, long intervalMillis, long intervalBytes) {
+            this.listener = listener;
+            this.total = total;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+            this.intervalBytes = intervalBytes <= 0 ? Long.MAX_VALUE : intervalBytes;
+            this.bytes = new AtomicLong(offset);
+            this.lastBytes = offset;
+        }
+
+        private void add(long count) {
+            long current = bytes.addAndGet(count);
+            if (current - lastBytes < intervalBytes && System.nanoTime() - lastTime < intervalNanos) return;
+            report(false);
+        }
+
+        // 下载完成, 最后回调一次
+        private void finish() {
+            report(true);
+        }
+
+        private synchronized void report(boolean force) {
+            long now = System.nanoTime();
+            long current = bytes.get();
+            if (!force && current - lastBytes < intervalBytes && now - lastTime < intervalNanos) return; // 其他线程已回调
+            if (force && reported && current == lastBytes) return; // 最后一次写入已回调
+            double seconds = Math.max(1, now - lastTime) / 1e9;
+            double speed = (current - lastBytes) / seconds;
+            lastBytes = current;
+            lastTime = now;
+            reported = true;
+            listener.onProgress(current, total, speed);
+        }
+    }
+
+    // 响应解码 ########################################################################################################################
+    // 按 Content-Encoding 包装响应流, 边读边解压, 不整体缓存
+    public interface ContentDecoder {
+        InputStream decode(InputStream input) throws IOException;
+    }
+
+    // 默认解码器: gzip, deflate
+    private static Map<String, ContentDecoder> $defaultDecoders() {
+        Map<String, ContentDecoder> decoders = new LinkedHashMap<>();
+        decoders.put("gzip", GZIPInputStream::new);
+        decoders.put("deflate", HTTP::$inflateStream);
+        return Collections.unmodifiableMap(decoders);
+    }
+
+    // 按 Content-Encoding 解压, 多个编码按相反顺序解码, 未注册的编码保持原样
+    private static InputStream $decodeStream(InputStream input, String contentEncoding, Map<String, ContentDecoder> decoders) throws IOException {
+        if (null == input || $isEmptyString(contentEncoding)) return input;
+
+        String[] codings = contentEncoding.toLowerCase().split(",");
+        InputStream decoded = input;
+        for (int i = codings.length - 1; i >= 0; i--) {
+            String coding = $getString(codings[i]);
+            if ("x-gzip".equals(coding)) coding = "gzip";
+            if ($isEmptyString(coding) || "identity".equals(coding)) continue;
+
+            ContentDecoder decoder = decoders.get(coding);
+            if (null == decoder) return decoded; // 未知编码, 保持原样, 由调用方根据响应头处理
+            decoded = decoder.decode(decoded);
+        }
+        return decoded;
+    }
+
+    // deflate 解码, 兼容带 zlib 头和不带头的原始 deflate 数据
+    private static InputStream $inflateStream(InputStream input) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(input, 2);
+        byte[] header = new byte[2];
+        int count = stream.read(header);
+        if (count > 0) stream.unread(header, 0, count);
+        boolean zlib = 2 == count && 8 == (header[0] & 0x0F) && 0 == ((header[0] & 0xFF) << 8 | (header[1] & 0xFF)) % 31;
+        return new InflaterInputStream(stream, new Inflater(!zlib));
+    }
+
+    // 响应处理 ########################################################################################################################
+    // 响应体以流的方式交给 handler, handler 返回后关闭流并释放连接, 读到末尾的连接在连接池模式下可复用
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws Exception;
+    }
+
+    // 响应内容, 只在 handler 执行期间有效
+    public static class Response {
+        private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=\"?([\\w\\-.:]+)", Pattern.CASE_INSENSITIVE);
+
+        private final HttpURLConnection connection;
+        private final int code; // 响应状态码
+        private final String encoding; // 响应头没有指定字符集时使用的字符集
+        private final InputStream input; // 响应体, 没有响应体时为空
+        private boolean eof = false; // 响应体是否读到末尾
+
+        private Response(HttpURLConnection connection, String encoding, Map<String, ContentDecoder> decoders) throws IOException {
+            this.connection = connection;
+            this.encoding = encoding;
+            this.code = connection.getResponseCode();
+            InputStream raw = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            boolean bodyless = 204 == code || 304 == code || METHOD_HEAD_VALUE.equalsIgnoreCase(connection.getRequestMethod()); // 没有响应体, 不需要解码
+            InputStream source = null == raw || bodyless ? raw : $decodeStream(raw, connection.getContentEncoding(), decoders);
+            this.input = null == source ? null : new FilterInputStream(source) {
+                @Override
+                public int read() throws IOException {
+                    int value = super.read();
+                    if (-1 == value) eof = true;
+                    return value;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = super.read(b, off, len);
+                    if (-1 == count) eof = true;
+                    return count;
+                }
+            };
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getMethod() {
+            return connection.getRequestMethod();
+        }
+
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return connection.getHeaderFields();
+        }
+
+        public String getContentType() {
+            return connection.getContentType();
+        }
+
+        // 响应体长度, 未知时为 -1
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        // 响应字符集, 优先使用 Content-Type 中的 charset
+        public Charset getCharset() {
+            String type = $getString(getContentType());
+            Matcher matcher = CHARSET_PATTERN.matcher(type);
+            try {
+                if (matcher.find()) return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException ignored) {
+            }
+            return Charset.forName(encoding);
+        }
+
+        // 字节流, 已按 Content-Encoding 解压, 没有响应体时为空
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        // 字节通道
+        public ReadableByteChannel getChannel() throws IOException {
+            return Channels.newChannel($requireInput());
+        }
+
+        // 字符流, 按响应字符集增量解码
+        public Reader getReader() throws IOException {
+            return new InputStreamReader($requireInput(), getCharset());
+        }
+
+        // 按块拉取文本, 每块最多 size 个字符, 增量解码, 内存占用与响应大小无关
+        public Iterator<String> chunks(int size) throws IOException {
+            Reader reader = getReader();
+            char[] cache = new char[Math.max(1, size)];
+            return new Iterator<String>() {
+                private String next;
+
+                @Override
+                public boolean hasNext() {
+                    if (null != next) return true;
+                    try {
+                        int count = reader.read(cache);
+                        if (-1 != count) next = new String(cache, 0, count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null != next;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    String chunk = next;
+                    next = null;
+                    return chunk;
+                }
+            };
+        }
+
+        private InputStream $requireInput() throws IOException {
+            if (null == input) throw new IOException("InputStream is Empty");
+            return input;
+        }
+
+        // 关闭响应体, 返回连接是否可复用
+        private boolean close() {
+            boolean reusable = eof || null == input || 204 == code || 304 == code || METHOD_HEAD_VALUE.equalsIgnoreCase(getMethod());
+            if (null == input) return reusable;
+            try {
+                input.close();
+            } catch (IOException e) {
+                return false;
+            }
+            return reusable;
+        }
+    }
+
+    // 单个请求参数 #####################################################################################################################
+    // 请求方法, 地址, 提交内容, 以及单个请求附加的 Header / 来源, 只作用于本次请求, 不修改 HTTP 的共享配置
+    // content 不为空时以字节流提交, 否则提交 formData 表单, POST 带有 files 时使用 multipart 提交
+    public static class RequestSpec {
+        private final String method; // 请求方法
+        private final String url; // 请求地址
+        private String referer; // 来源标识, 为空时使用 HTTP 的来源设置
+        private String content; // 提交的文本内容
+        private Map<?, ?> formData; // 提交的表单
+        private Map<String, String> files; // 上传的文件
+        private final Map<String, Object> headers = new LinkedHashMap<>(); // 单个请求的 Header
+        private final Map<String, String> rawHeaders = new LinkedHashMap<>(); // 内部使用的 Header, 例如缓存校验标识, 不编码, 直接设置到连接
+        private boolean refererChain = false; // 内部使用, 是否与普通请求方法相同使用并更新当前线程的上一个请求地址
+
+        public RequestSpec(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public static RequestSpec get(String url) {
+            return new RequestSpec(METHOD_GET_VALUE, url);
+        }
+
+        public static RequestSpec post(String url, String content) {
+            return new RequestSpec(METHOD_POST_VALUE, url).setContent(content);
+        }
+
+        public static RequestSpec post(String url, Map<?, ?> formData) {
+            return new RequestSpec(METHOD_POST_VALUE, url).setFormData(formData);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getReferer() {
+            return referer;
+        }
+
+        public RequestSpec setReferer(String referer) {
+            this.referer = referer;
+            return this;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public RequestSpec setContent(String content) {
+            this.content = content;
+            return this;
+        }
+
+        public Map<?, ?> getFormData() {
+            return formData;
+        }
+
+        public RequestSpec setFormData(Map<?, ?> formData) {
+            this.formData = formData;
+            return this;
+        }
+
+        public Map<String, String> getFiles() {
+            return files;
+        }
+
+        public RequestSpec setFiles(Map<String, String> files) {
+            this.files = files;
+            return this;
+        }
+
+        public Map<String, Object> getHeaders() {
+            return headers;
+        }
+
+        public RequestSpec addHeader(String key, Object value) {
+            if ($isEmptyString(key) || null == value) return this;
+            headers.put(key, value);
+            return this;
+        }
+    }
+
+    // 异步调度器 ########################################################################################################################
+    // 每个主机同时执行的请求数达到上限后, 新请求进入主机队列, 不占用线程等待, 前面的请求完成后再提交到执行器
+    private static class Dispatcher {
+        private final Map<String, Host> hosts = new ConcurrentHashMap<>(); // 有请求执行中的主机
+
+        // 分发任务
+        private void dispatch(String key, int maxPerHost, Task<?> task) {
+            if (maxPerHost <= 0) {
+                task.run(null);
+                return;
+            }
+
+            boolean[] start = {false};
+            hosts.compute(key, (k, host) -> {
+                Host handle = null == host ? new Host() : host;
+                if (handle.running < maxPerHost) {
+                    handle.running++;
+                    start[0] = true;
+                } else {
+                    handle.queue.add(task);
+                }
+                return handle;
+            });
+            if (start[0]) task.run(() -> finish(key));
+        }
+
+        // 任务完成, 执行主机队列中的下一个任务
+        private void finish(String key) {
+            Task<?>[] next = {null};
+            hosts.computeIfPresent(key, (k, host) -> {
+                next[0] = host.queue.poll();
+                if (null == next[0]) host.running--;
+                return 0 == host.running ? null : host;
+            });
+            if (null != next[0]) next[0].run(() -> finish(key));
+        }
+
+        // 单个主机的执行状态
+        private static class Host {
+            private int running = 0; // 执行中的请求数
+            private final Deque<Task<?>> queue = new ArrayDeque<>(); // 等待中的请求
+        }
+
+        // 异步任务
+        private static class Task<T> {
+            private final Executor executor;
+            private final Callable<T> call;
+            private final CompletableFuture<T> future;
+
+            private Task(Executor executor, Callable<T> call, CompletableFuture<T> future) {
+                this.executor = executor;
+                this.call = call;
+                this.future = future;
+            }
+
+            // 提交到执行器, 完成后回调 done
+            private void run(Runnable done) {
+                try {
+                    executor.execute(() -> {
+                        try {
+                            future.complete(call.call());
+                        } catch (Throwable e) {
+                            future.completeExceptionally(e);
+                        } finally {
+                            if (null != done) done.run();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    future.completeExceptionally(e);
+                    if (null != done) done.run();
+                }
+            }
+        }
+    }
+
+    // 连接池 ##########################################################################################################################
+    // HttpURLConnection 的 Socket 由 JDK Keep-Alive 缓存管理, 响应读完且不调用 disconnect() 时 Socket 归还缓存, 同主机下次请求直接复用
+    // Pool 负责: 限制每个主机同时占用的连接数, 超过最大存活时间的连接通过 Connection: close 轮换, 清理长时间空闲的主机记录
+    // 注: JDK 每个主机默认最多缓存 5 个空闲 Socket, 需要更多时通过 -Dhttp.maxConnections 调整
+    public static class Pool implements Closeable {
+        private int maxPerHost = 8; // 每个主机最大并发连接数, 只影响新建的主机记录
+        private int acquireTimeout = 10 * 1000; // 等待连接名额超时时间
+        private long idleTimeout = 60 * 1000; // 主机空闲超时时间, 超过后清理主机记录
+        private long maxLifetime = 5 * 60 * 1000; // 连接最大存活时间, 超过后轮换, <= 0 不限制
+
+        private final Map<String, Route> routes = new ConcurrentHashMap<>(); // 主机记录
+        private final Map<HttpURLConnection, Route> leases = new ConcurrentHashMap<>(); // 使用中的连接
+        private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis()); // 上次清理时间
+        private volatile boolean closed = false; // 是否已关闭
+
+        // 占用连接名额, 达到主机上限时等待
+        void lease(HttpURLConnection connection) throws Exception {
+            if (closed) throw new Exception("Pool is Closed");
+            sweep();
+
+            String key = $getHostKey(connection.getURL());
+            Route route = routes.compute(key, (k, value) -> {
+                Route handle = null == value ? new Route(maxPerHost) : value;
+                handle.lastUsed = System.currentTimeMillis();
+                return handle;
+            });
+            if (!route.permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS))
+                throw new Exception(String.format("Pool Acquire Timeout [%s]", key));
+
+            if (route.retire(maxLifetime)) connection.setRequestProperty("Connection", "close"); // 轮换旧连接
+            leases.put(connection, route);
+        }
+
+        // 释放连接名额, 返回 true 表示连接可交还 JDK 缓存复用
+        boolean release(HttpURLConnection connection, boolean reusable) {
+            Route route = leases.remove(connection);
+            if (null == route) return false;
+            route.lastUsed = System.currentTimeMillis();
+            route.permits.release();
+            return reusable && !closed;
+        }
+
+        // 清理空闲主机记录, 每个空闲周期最多执行一次
+        private void sweep() {
+            long now = System.currentTimeMillis();
+            long last = lastSweep.get();
+            if (now - last < idleTimeout || !lastSweep.compareAndSet(last, now)) return;
+            for (String key : routes.keySet()) routes.computeIfPresent(key, (k, route) -> route.isIdle(now, idleTimeout) ? null : route);
+        }
+
+        // 关闭连接池, 之后的请求直接报错, 使用中的连接释放时断开
+        @Override
+        public void close() {
+            closed = true;
+            routes.clear();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public int getMaxPerHost() {
+            return maxPerHost;
+        }
+
+        public Pool setMaxPerHost(int maxPerHost) {
+            this.maxPerHost = maxPerHost;
+            return this;
+        }
+
+        public int getAcquireTimeout() {
+            return acquireTimeout;
+        }
+
+        public Pool setAcquireTimeout(int acquireTimeout) {
+            this.acquireTimeout = acquireTimeout;
+            return this;
+        }
+
+        public long getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public Pool setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public long getMaxLifetime() {
+            return maxLifetime;
+        }
+
+        public Pool setMaxLifetime(long maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        // 单个主机的连接记录
+        private static class Route {
+            private final int size; // 名额总数
+            private final Semaphore permits; // 剩余名额
+            private volatile long lastUsed = System.currentTimeMillis(); // 最后使用时间
+            private long generation = System.currentTimeMillis(); // 当前这批连接的创建时间
+            private int closing = 0; // 当前批次还需要关闭的连接数
+
+            private Route(int size) {
+                this.size = Math.max(1, size);
+                this.permits = new Semaphore(this.size, true);
+            }
+
+            // 本次请求是否关闭连接, 超过存活时间后, 依次关闭 size 个连接, 再开始新一批
+            private synchronized boolean retire(long maxLifetime) {
+                long now = System.currentTimeMillis();
+                if (0 == closing && maxLifetime > 0 && now - generation > maxLifetime) closing = size;
+                if (0 == closing) return false;
+                if (0 == --closing) generation = now;
+                return true;
+            }
+
+            // 没有使用中的连接, 并且超过空闲时间
+            private boolean isIdle(long now, long idleTimeout) {
+                return permits.availablePermits() == size && now - lastUsed > idleTimeout;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        // 1. 全局支持链式调用: HTTP http = new HTTP().setIgnoreHttps(true).addHeader(key, value);
+        // 2. 设置地址栏参数, 默认提交表单拼接字符串等全部都有 Encoding
+        // 3. 像 get, post 为终止操作, 配置需要提前设置
+        // 4. 下载文件可解析 URL 获取文件名, 若获取后缀失败, 默认 .tmp 作为后缀
+        // 5. upload 操作上传参数默认值 file
+
+        // get 请求
+        // get(String url): GET 请求获取内容
+        // get(String uri, Object... kv): get请求地址栏后面增加 kv 的请求参数, 当 Map 使用就好, 必须键值对出现
+        // get(String uri, Map<?, ?> queryParameters): 跟上面方法相仿
+
+        // delete 请求
+        // delete(String url): DELETE 请求
+
+        // header 请求
+        // header(String url): HEAD 请求, 获取头部响应体信息
+
+
+        // options 请求
+        // options(String url): OPTIONS 请求, 一般用于跨域检查
+
+        // request 方法
+        // request(String url, String method): 可自定义请求类型
+
+        // post 请求
+        // 1. post 方法均为简单的提交表单方式
+        // 2. post 也可以提交字节流, putByte = true, 既提交字节流
+        // 3. 所有方法参数均转为 String, 根据 putByte 是否转为字节流或者数据 提交到服务器
+        // 4. 默认编码方式 application/x- www-form-urlencoded
+        // 5. 可通过 new HTTP().setContentType(String contentType) 更改编码规则, 比如上传 application/json 等
+
+        // post(String url, Object... kv)
+        // post(String url, boolean putByte, Object... kv)
+        // post(String url, Map<?, ?> formData)
+        // post(String url, boolean putByte, Map<?, ?> formData)
+        // post(String url, String content)
+        // post(String url, boolean putByte, String content)
+
+        // postMultipart 默认文件上传方式
+        // 1. 使用场景, 需要提交表单和上传文件的, 可使用此方式
+        // 2. 默认编码方式: multipart/form-data;boundary, 可把上传的文件读取数据流到提交的流里
+        // 3. 请求体流式提交, 不缓存在内存中, 因此不能重发: 服务端返回 3xx 时不跟随跳转(开启跟随跳转时抛出 HttpRetryException), 401 时不重试认证
+
+        // postMultipart(String url, Object... kv)
+        // postMultipart(String url, Map<?, ?> postData)
+        // postMultipart(String url, Map<?, ?> postData, Map<String, String> postFile)
+
+        // upload 方法
+        // 默认使用 postMultipart 方法提交文件
+
+        // upload(String url, String path): 上传单个文件, path 是文件路径, 默认参数 file
+        // upload(String url, String key, String path)
+        // upload(String url, Map<String, String> uploadFiles)
+
+        // download 方法
+        // createFolderPath(): 外部使用方法, 可获取 年/月日 文件夹路径
+        // createFileName(): 外部使用方法, 可获取一个根据时间生成的文件名, 不带后缀名
+
+        // download(String url, String realFolderPath): 下载到 realFolderPath 目录下, 默认创建时间分割目录, 文件名也按时间创建
+        // download(String url, String realFolderPath, boolean createFolder): 跟上面方法相仿, 可自定义是否创建 年/月日 的目录
+        // downloadByOriginal(String url, String realFolderPath, boolean createFolder): 跟上面方法相仿, 但文件名会根据url计算出来, 如果没有则按照时间创建
+        // download(String url, String realFolderPath, boolean createFolder, String fileBaseName, String fileSuffix, boolean autoFileName): 完整的自定义下载文件方法
+        // downloadFile(String url, String filePath): 下载一个文件到指定路径, filePath 是完整路径包括文件名后缀, 核心方法
+        // setBufferSize(int bufferSize): 传输缓冲区大小, 默认 8Kb, 缓冲区从共享的缓冲区池中获取, 用完归还
+        // setDownloadResume(boolean resume): 断点续传, 失败时保留 .part / .part.info, 再次下载同一路径时发送 Range + If-Range 继续下载
+        // setProgressListener(ProgressListener listener): 下载进度回调 (已下载, 总大小, 速度 字节/秒), 不设置时没有额外开销
+        // setProgressInterval(long millis) / setProgressBytes(long bytes): 回调节流, 达到时间或字节间隔任一条件才回调
+        // setDownloadSegments(int segments): 分段并发下载, 服务端支持 Accept-Ranges 时生效, 先写入 .part 临时文件, 完成后原子重命名
+
+        // HTTPS 方法
+        // HTTPS 设置只作用于当前实例(及复制的实例)的连接, 不修改 JVM 全局默认值, 不同证书的实例可以在同一进程中并行使用
+        // setIgnoreHttps(boolean ignoreHttps): 忽略所有 HTTPS, 既信任所有 HTTPS
+        // setSslContext(SSLContext context) / setHostnameVerifier(HostnameVerifier verifier): 自定义证书和主机名校验
+        // setSSL(String filePath, String password, String tlsType): 设置 SSL 证书
+        // setSSL(String filePath, String password): 设置 SSL 证书, 默认 TSLv1
+        // 1. SSLContext 按配置缓存, 证书文件只加载一次, 同一配置的连接共享 TLS 会话缓存, 恢复会话时跳过完整握手
+        // 2. setSslSessionCacheSize(int size) / setSslSessionTimeout(int seconds) 调整会话缓存, 在 setSSL / 第一个 HTTPS 请求之前设置
+        // clearSSLCache(): 清空 SSLContext 缓存
+
+        // Cookie 方法
+        // addCookie(String uri, String domain, String path, String key, String value)
+        // addCookie(String uri, HttpCookie... cookies)
+        // addCookie(URI uri, HttpCookie... cookies)
+
+        // Header 方法
+        // addHeader(String key, Object value)
+
+        // 压缩方法
+        // 1. 响应按 Content-Encoding 边读边解压, 默认支持 gzip, deflate
+        // 2. setGzip(true) 发送 Accept-Encoding, 内容为已注册的解码器
+        // addDecoder(String contentEncoding, ContentDecoder decoder): 注册其他解码器, 例如 addDecoder("br", BrotliInputStream::new)
+        // setCompressThreshold(int compressThreshold): post / put 提交内容达到此长度时 gzip 压缩分块提交, 默认 -1 不压缩, 压缩提交与 postMultipart 相同不能跟随跳转和重试认证
+
+        // 连接池方法
+        // 1. 设置连接池后, 读完响应的连接不再断开, Socket 交还 JDK Keep-Alive 缓存复用, 省去 TCP / TLS 握手
+        // 2. 多个 HTTP 可共享同一个 Pool, 共享时由创建者关闭 Pool, 不要调用 HTTP.close()
+        // setPool(Pool pool): new HTTP().setPool(new HTTP.Pool().setMaxPerHost(16).setMaxLifetime(60 * 1000))
+
+        // HTTP/2 方法
+        // 1. JDK 11+ 使用 java.net.http.HttpClient 传输, 通过 ALPN 协商 HTTP/2, 同一主机的并发请求在一个连接上多路复用, 服务端不支持时使用 HTTP/1.1
+        // 2. get / post / upload / download 等方法不变, 低版本 JDK 忽略此设置, isHttp2Supported() 判断是否可用
+        // 3. 连接超时, 是否跳转, Cookie 管理器和证书都相同的实例共用一个 HttpClient, 最多保留 16 个, 超出时丢弃最久未使用的
+        // 4. HttpClient 不支持自定义主机名校验, 设置了 setHostnameVerifier / setIgnoreHttps(true) / trustEveryone() 时 HTTPS 请求使用 HTTP/1.1
+        // setHttp2(boolean http2): new HTTP().setHttp2(true)
+        // close(): 关闭连接池, 可配合 try-with-resources 使用
+
+        // 异步方法
+        // 1. 异步方法在调用时复制当前配置, 返回 CompletableFuture, 不阻塞调用线程
+        // 2. setExecutor(Executor executor) 自定义执行器, 默认使用守护线程池
+        // 3. setMaxAsyncPerHost(int max) 每个主机同时执行的请求数, 超出的排队等待, 不占用线程
+        // getAsync(String url) / getAsync(String uri, Map<?, ?> queryParameters)
+        // postAsync(String url, Map<?, ?> formData) / postAsync(String url, String content)
+        // postMultipartAsync(String url, Map<?, ?> postData, Map<String, String> postFile)
+        // uploadAsync(String url, String path) / uploadAsync(String url, Map<String, String> uploadFiles)
+        // downloadAsync(String url, String realFolderPath) / downloadFileAsync(String url, String filePath)
+
+        // 非阻塞引擎
+        // 1. 一个选择器线程管理所有连接, 等待响应不占用线程, 适合同时抓取大量主机, 只处理 http://, https:// 仍走阻塞连接
+        // 2. 设置后 getAsync / postAsync / executeAsync (不含文件) 通过引擎发送, GET / HEAD 在长连接上流水线发送
+        // 3. 响应边读边解析到缓冲区池, 回调跟不上时暂停读取
+        // 4. 使用 connectionTimeout / readTimeout, followRedirects (只跟随 http:// 之间的跳转, 最多 20 次), Cookie, 限流和压缩设置
+        // 5. 忽略的设置: 重试, 熔断, 对冲, 连接池, HTTP/2, setExecutor / setMaxAsyncPerHost (由引擎的 setMaxConnectionsPerHost 限制); 设置了缓存或合并请求时 GET 走阻塞连接
+        // 6. Header 名称和值不能包含回车换行, 请求方法和地址不能包含空白, 否则请求直接失败
+        // setNioEngine(NioEngine engine): try (HTTP.NioEngine engine = new HTTP.NioEngine().setMaxConnectionsPerHost(2)) { new HTTP().setNioEngine(engine).getAsync(url); }
+
+        // 域名解析
+        // 1. DnsCache 缓存解析结果(ttl)和解析失败(negativeTtl), 过期前后台刷新, 多个地址时轮询, addHost 添加静态地址
+        // 2. NioEngine.setResolver 由解析器选择连接地址, 缓存中有地址时直接在选择器线程中使用
+        // 3. 只对 NioEngine 生效: 阻塞请求和 HTTP/2 由 JDK 通过 InetAddress 解析, 缓存时间由 networkaddress.cache.ttl / networkaddress.cache.negative.ttl 控制
+        // NioEngine.setResolver(Resolver resolver): HTTP.DnsCache dns = new HTTP.DnsCache().setTtl(30000); dns.prefetch(hosts); new HTTP.NioEngine().setResolver(dns)
+
+        // 单个请求方法
+        // 1. HTTP 的配置在请求过程中只读, 配置完成后同一个实例可在多个线程中共享, 不需要每个请求 new 一个
+        // 2. 单个请求的 Header / 来源通过 RequestSpec 指定, 不修改共享配置, 不使用也不更新自动来源
+        // 3. 普通请求方法(get / post 等)自动把上一个请求地址作为来源, 上一个请求地址按线程保存, 共享时各线程只看到自己的请求
+        // 4. 开始共享后只有 addHeader / setReferer 可以在请求过程中调用(整体替换只读快照 / volatile), 其他 set 方法应在共享前调用, 需要不同配置时用 copy() 复制后修改
+        // execute(RequestSpec spec): http.execute(HTTP.RequestSpec.get(url).setReferer(referer).addHeader(key, value))
+        // executeAsync(RequestSpec spec): 异步执行单个请求
+
+        // 流式响应方法
+        // 1. 响应体不整体读入内存, 由 ResponseHandler 读取 InputStream / ReadableByteChannel / Reader / 分块文本, 适合大响应
+        // 2. handler 返回后释放连接, 读到末尾的连接在连接池模式下可复用
+        // stream(String url, ResponseHandler<T> handler): http.stream(url, response -> { Iterator<String> it = response.chunks(8192); ... })
+        // execute(RequestSpec spec, ResponseHandler<T> handler): 任意请求方法的流式响应
+
+        // 批量方法
+        // executeAll(List<RequestSpec> specs): 所有请求共享当前配置, JDK 21+ 使用虚拟线程, 结果按输入顺序返回
+        // executeAll(Arrays.asList(HTTP.RequestSpec.get(url1), HTTP.RequestSpec.post(url2, json).addHeader("Content-Type", CONTENT_TYPE_JSON_VALUE)))
+        // setBatchThreads(int batchThreads): 不支持虚拟线程时的线程池大小
+
+        // 限流方法
+        // 1. 令牌桶限流, 限制每秒请求数和每秒下载字节数, 可同时按客户端和按主机限制, 多个 HTTP 可共享同一个 RateLimiter
+        // 2. 同步请求在当前线程等待, 异步请求延迟提交不占用线程, 下载时按读取的字节数限速
+        // setRateLimiter(RateLimiter limiter): new HTTP().setRateLimiter(new HTTP.RateLimiter().setHostRequestsPerSecond(5).setBytesPerSecond(1024 * 1024))
+        // getThrottledTime() / getThrottledCount(): 累计限流等待时间(毫秒)和次数
+
+        // 重试方法
+        // 1. 重试连接失败, 超时, 连接重置和 429 / 503 响应, 有 Retry-After 时按其等待, 否则指数退避加随机抖动
+        // 2. 默认只重试 GET / HEAD / OPTIONS / PUT / DELETE, setRetryNonIdempotent(true) 后 POST 也重试, 请求内容重新发送
+        // 3. 重试额度约为请求数的 20%, 上游持续失败时额度耗尽, 直接返回错误, 不会放大流量
+        // setRetryPolicy(RetryPolicy policy): new HTTP().setRetryPolicy(new HTTP.RetryPolicy().setMaxRetries(3).setRetryStatuses(429, 502, 503, 504))
+        // getRetryCount() / getExhaustedCount(): 累计重试次数和额度耗尽次数
+
+        // 熔断方法
+        // 1. 按主机统计滚动窗口内的失败率(网络错误, 超时, 5xx)和慢请求比例, 超过阈值后熔断, 熔断期间直接抛出 CircuitOpenException
+        // 2. 熔断时间结束后放行少量探测请求, 成功后恢复, 失败继续熔断
+        // setCircuitBreaker(CircuitBreaker breaker): new HTTP().setCircuitBreaker(new HTTP.CircuitBreaker().setFailureRateThreshold(0.5).setSlowCallThreshold(2000))
+        // getState(String url) / getRejectedCount(): 主机熔断状态, 累计拒绝的请求数
+
+        // 对冲方法
+        // 1. GET / HEAD / OPTIONS 请求在延迟时间内没有收到响应头时再发出一次相同的请求, 先响应的胜出, 其余连接断开
+        // 2. 延迟时间取最近请求耗时的百分位数(默认 p95), 只有最慢的一小部分请求会多发一次
+        // setHedgePolicy(HedgePolicy policy): new HTTP().setHedgePolicy(new HTTP.HedgePolicy().setPercentile(0.99).setMinDelay(20))
+        // getHedgedCount() / getHedgeWins(): 累计额外发出的请求数, 额外请求胜出的次数
+
+        // 缓存方法
+        // 1. 缓存 get 请求的 200 响应, 遵循 Cache-Control: max-age / no-store / no-cache 和 Expires, 过期后带 If-None-Match / If-Modified-Since 重新验证, 304 时沿用缓存
+        // 2. 内存按 LRU 淘汰, 设置磁盘目录后同时写入磁盘, 重启后仍可使用
+        // setCache(Cache cache): new HTTP().setCache(new HTTP.Cache().setMaxSize(32 * 1024 * 1024).setDirectory("/tmp/http-cache"))
+        // getHitCount() / getMissCount() / getRevalidateCount(): 命中, 未命中, 304 重新验证次数
+
+        // 请求合并方法
+        // 1. 相同方法, 地址和配置的 GET / HEAD / OPTIONS 请求同时执行时, 只发出一个请求, 其余调用等待并共享结果, 缓存过期时不会同时请求上游
+        // setCoalesce(boolean coalesce): new HTTP().setCache(cache).setCoalesce(true)
+        // getCoalescedCount(): 累计被合并的请求数
     }
 }